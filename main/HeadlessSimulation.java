@@ -0,0 +1,147 @@
+package pepse;
+
+import danogl.gui.UserInputListener;
+import danogl.gui.WindowController;
+import danogl.util.Vector2;
+import pepse.util.FrameStats;
+import pepse.util.InputSource;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+
+/**
+ * Runs the pepse world without a window: same world, scripted input, fixed time step,
+ * no rendering and no frame rate cap.
+ * Usage: HeadlessSimulation [width height simulatedSeconds [statsPrefix]]
+ */
+public class HeadlessSimulation {
+    public static final float FIXED_TIME_STEP = 1f / 60;
+    private static final Vector2 DEFAULT_WINDOW_DIMENSIONS = new Vector2(1920, 1080);
+    private static final int DEFAULT_SEED = 22;
+    private static final float DEFAULT_SIMULATED_SECONDS = 600;
+    private static final float NANOS_IN_SECOND = 1e9f;
+
+    private final PepseGameManager gameManager;
+    private long steps;
+
+    /**
+     * Builds the world with the given window dimensions.
+     * @param windowDimensions the dimensions the world is generated for, as if it had a window.
+     * @param input tells which keys are pressed.
+     * @param seed the world seed.
+     */
+    public HeadlessSimulation(Vector2 windowDimensions, InputSource input, int seed) {
+        gameManager = new PepseGameManager(input, seed);
+        WindowController windowController = headless(WindowController.class, windowDimensions);
+        UserInputListener inputListener = headless(UserInputListener.class, windowDimensions);
+        gameManager.initializeGame(null, null, inputListener, windowController);
+    }
+
+    /**
+     * @return the simulated game.
+     */
+    public PepseGameManager gameManager() {
+        return gameManager;
+    }
+
+    /**
+     * @return number of steps simulated so far.
+     */
+    public long steps() {
+        return steps;
+    }
+
+    /**
+     * Advances the world by one fixed time step.
+     */
+    public void step() {
+        step(FIXED_TIME_STEP);
+    }
+
+    /**
+     * Advances the world by one step of the given length.
+     * @param deltaTime seconds to advance by.
+     */
+    public void step(float deltaTime) {
+        gameManager.update(deltaTime);
+        steps++;
+    }
+
+    /**
+     * Advances the world by fixed time steps, as fast as possible.
+     * @param simulatedSeconds seconds of game time to simulate.
+     */
+    public void run(float simulatedSeconds) {
+        long stepCount = (long) (simulatedSeconds / FIXED_TIME_STEP);
+        for (long i = 0; i < stepCount; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Creates a stand-in for a window-side interface: it reports the given window dimensions,
+     * no pressed keys, and does nothing otherwise.
+     * @param type the interface.
+     * @param windowDimensions dimensions to report.
+     * @param <T> the interface type.
+     * @return the stand-in.
+     */
+    private static <T> T headless(Class<T> type, Vector2 windowDimensions) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (instance, method, args) -> {
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == Vector2.class) {
+                        return windowDimensions;
+                    } else if (method.getName().equals("toString")) {
+                        return "headless " + type.getSimpleName();
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(instance);
+                    } else if (method.getName().equals("equals")) {
+                        return instance == args[0];
+                    } else if (returnType == boolean.class) {
+                        return false;
+                    } else if (returnType == int.class) {
+                        return 0;
+                    } else if (returnType == long.class) {
+                        return 0L;
+                    } else if (returnType == float.class) {
+                        return 0f;
+                    } else if (returnType == double.class) {
+                        return 0.0;
+                    }
+                    return null;
+                });
+        return type.cast(proxy);
+    }
+
+    /**
+     * Simulates the world with the explorer script and prints how fast it ran.
+     * @param args optional window width, window height and simulated seconds, and a path prefix
+     *             to dump the frame stats to (as prefix.csv and prefix.json).
+     * @throws IOException if the frame stats cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        Vector2 windowDimensions = DEFAULT_WINDOW_DIMENSIONS;
+        float simulatedSeconds = DEFAULT_SIMULATED_SECONDS;
+        if (args.length >= 2) {
+            windowDimensions = new Vector2(Float.parseFloat(args[0]), Float.parseFloat(args[1]));
+        }
+        if (args.length >= 3) {
+            simulatedSeconds = Float.parseFloat(args[2]);
+        }
+        HeadlessSimulation simulation = new HeadlessSimulation(windowDimensions, ScriptedInput.explorer(),
+                DEFAULT_SEED);
+        long start = System.nanoTime();
+        simulation.run(simulatedSeconds);
+        float wallSeconds = (System.nanoTime() - start) / NANOS_IN_SECOND;
+        System.out.printf("simulated %.0fs in %d steps, %.3fs wall time, %.0f steps/s%n",
+                simulatedSeconds, simulation.steps(), wallSeconds, simulation.steps() / wallSeconds);
+        FrameStats stats = simulation.gameManager().frameStats();
+        System.out.println(stats.summary());
+        if (args.length >= 4) {
+            stats.writeCsv(Path.of(args[3] + ".csv"));
+            stats.writeJson(Path.of(args[3] + ".json"));
+        }
+    }
+}
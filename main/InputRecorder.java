@@ -0,0 +1,101 @@
+package pepse;
+
+import danogl.util.Vector2;
+import pepse.util.InputSource;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records the keys another input presses on every frame, together with the frame's delta time,
+ * so the session can be replayed exactly by an InputReplay.
+ * Every tick takes one byte (the pressed keys), plus four when its delta time differs from the
+ * previous tick's.
+ */
+public class InputRecorder implements InputSource {
+    static final int MAGIC = 0x50455053;
+    static final byte VERSION = 1;
+    //the keys the game reads, bit i of a tick's mask is KEYS[i]
+    static final int[] KEYS = {KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_SPACE, KeyEvent.VK_SHIFT};
+    //set in a tick's mask when its delta time equals the previous tick's, which is then not stored
+    static final int SAME_DELTA_FLAG = 0x80;
+
+    private final InputSource source;
+    private final ByteArrayOutputStream ticks = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(ticks);
+    private int tickCount;
+    private float lastDeltaTime = Float.NaN;
+    private int mask;
+
+    /**
+     * Constructor for InputRecorder.
+     * @param source the input to record, e.g. the window's keyboard.
+     */
+    public InputRecorder(InputSource source) {
+        this.source = source;
+    }
+
+    /**
+     * @return number of ticks recorded.
+     */
+    public synchronized int tickCount() {
+        return tickCount;
+    }
+
+    @Override
+    public boolean isKeyPressed(int keyCode) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i] == keyCode) {
+                return (mask & (1 << i)) != 0;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void advance(float deltaTime) {
+        source.advance(deltaTime);
+        mask = 0;
+        for (int i = 0; i < KEYS.length; i++) {
+            if (source.isKeyPressed(KEYS[i])) {
+                mask |= 1 << i;
+            }
+        }
+        try {
+            if (deltaTime == lastDeltaTime) {
+                out.writeByte(mask | SAME_DELTA_FLAG);
+            } else {
+                out.writeByte(mask);
+                out.writeFloat(deltaTime);
+                lastDeltaTime = deltaTime;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot write to memory", e);
+        }
+        tickCount++;
+    }
+
+    /**
+     * Writes the recording to a file.
+     * @param path the file.
+     * @param seed seed of the recorded world.
+     * @param windowDimensions window dimensions of the recorded world.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void save(Path path, int seed, Vector2 windowDimensions) throws IOException {
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            file.writeInt(MAGIC);
+            file.writeByte(VERSION);
+            file.writeInt(seed);
+            file.writeFloat(windowDimensions.x());
+            file.writeFloat(windowDimensions.y());
+            file.writeInt(tickCount);
+            ticks.writeTo(file);
+        }
+    }
+}
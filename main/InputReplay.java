@@ -0,0 +1,120 @@
+package pepse;
+
+import danogl.util.Vector2;
+import pepse.util.InputSource;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Presses the keys of a recording made by an InputRecorder, tick by tick.
+ * Step the game by nextDeltaTime on every frame to replay the recorded session exactly.
+ */
+public class InputReplay implements InputSource {
+    private final int seed;
+    private final Vector2 windowDimensions;
+    private final byte[] masks;
+    private final float[] deltaTimes;
+    private int tick = -1;
+
+    /**
+     * Constructor for InputReplay.
+     * @param seed seed of the recorded world.
+     * @param windowDimensions window dimensions of the recorded world.
+     * @param masks pressed keys of every tick.
+     * @param deltaTimes delta time of every tick.
+     */
+    private InputReplay(int seed, Vector2 windowDimensions, byte[] masks, float[] deltaTimes) {
+        this.seed = seed;
+        this.windowDimensions = windowDimensions;
+        this.masks = masks;
+        this.deltaTimes = deltaTimes;
+    }
+
+    /**
+     * Reads a recording.
+     * @param path the file an InputRecorder saved.
+     * @return a replay positioned before the first tick.
+     * @throws IOException if the file cannot be read or is not a recording.
+     */
+    public static InputReplay load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != InputRecorder.MAGIC || in.readByte() != InputRecorder.VERSION) {
+                throw new IOException(path + " is not an input recording");
+            }
+            int seed = in.readInt();
+            Vector2 windowDimensions = new Vector2(in.readFloat(), in.readFloat());
+            int tickCount = in.readInt();
+            byte[] masks = new byte[tickCount];
+            float[] deltaTimes = new float[tickCount];
+            float deltaTime = 0;
+            for (int tick = 0; tick < tickCount; tick++) {
+                int mask = in.readUnsignedByte();
+                if ((mask & InputRecorder.SAME_DELTA_FLAG) == 0) {
+                    deltaTime = in.readFloat();
+                }
+                masks[tick] = (byte) (mask & ~InputRecorder.SAME_DELTA_FLAG);
+                deltaTimes[tick] = deltaTime;
+            }
+            return new InputReplay(seed, windowDimensions, masks, deltaTimes);
+        }
+    }
+
+    /**
+     * @return seed of the recorded world.
+     */
+    public int seed() {
+        return seed;
+    }
+
+    /**
+     * @return window dimensions of the recorded world.
+     */
+    public Vector2 windowDimensions() {
+        return windowDimensions;
+    }
+
+    /**
+     * @return number of recorded ticks.
+     */
+    public int tickCount() {
+        return masks.length;
+    }
+
+    /**
+     * @return true if there are ticks left to replay.
+     */
+    public boolean hasNextTick() {
+        return tick + 1 < masks.length;
+    }
+
+    /**
+     * @return delta time of the next tick, the game should be stepped by it.
+     */
+    public float nextDeltaTime() {
+        return deltaTimes[tick + 1];
+    }
+
+    @Override
+    public boolean isKeyPressed(int keyCode) {
+        if (tick < 0) {
+            return false;
+        }
+        for (int i = 0; i < InputRecorder.KEYS.length; i++) {
+            if (InputRecorder.KEYS[i] == keyCode) {
+                return (masks[tick] & (1 << i)) != 0;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void advance(float deltaTime) {
+        if (hasNextTick()) {
+            tick++;
+        }
+    }
+}
@@ -9,50 +9,179 @@ import danogl.gui.UserInputListener;
 import danogl.gui.WindowController;
 import danogl.gui.rendering.Camera;
 import danogl.util.Vector2;
+import pepse.util.FrameStats;
+import pepse.util.InputSource;
+import pepse.util.ParallelUpdate;
 import pepse.world.Avatar;
+import pepse.world.Block;
+import pepse.world.ChunkCache;
+import pepse.world.ChunkManager;
+import pepse.world.FrustumCuller;
+import pepse.world.GroundContact;
 import pepse.world.Sky;
+import pepse.world.SpatialIndex;
+import pepse.world.StatsOverlay;
 import pepse.world.Terrain;
+import pepse.world.TileMap;
+import pepse.world.WorldLayers;
+import pepse.world.WorldPools;
 import pepse.world.daynight.Night;
 import pepse.world.daynight.Sun;
 import pepse.world.daynight.SunHalo;
+import pepse.world.trees.LeafSystem;
 import pepse.world.trees.Tree;
 
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Manages the pepse game.
  */
 public class PepseGameManager extends GameManager {
     private static final float CYCLE_LENGTH = 30;
-    private static final int SEED = 22;
+    private static final int DEFAULT_SEED = 22;
     private static final Color HALO_COLOR = new Color(0, 0, 0, 20);
-    private static final int[] DELETABLE_LAYERS = new int[]{Layer.DEFAULT, Layer.STATIC_OBJECTS,
-            Layer.STATIC_OBJECTS + 1};
     private static final float DELETE_THRESHOLD = 2f;
     private static final float ADD_THRESHOLD = 1f;
     private static final float CYCLE_MULTIPLIER = 2;
     private static final int HALO_LAYER = 10;
+    private static final int BLOCK_POOL_CAPACITY = 4096;
+    private static final int LEAF_POOL_CAPACITY = 2048;
+    private static final String BLOCK_POOL_NAME = "blocks";
+    private static final String LEAF_POOL_NAME = "leaves";
+    //bytes of compressed unloaded chunks kept in memory before spilling to disk
+    private static final long CHUNK_CACHE_CAPACITY = 8 * 1024 * 1024;
+    //leaves this far beyond the view's edges, in window widths, are still animated
+    private static final float LEAF_ACTIVE_MARGIN = 0.25f;
+    //run with -Dpepse.chunkBudgetMicros=n to change how long building and removing chunks may take per frame
+    private static final long CHUNK_BUDGET_MICROS = Long.getLong("pepse.chunkBudgetMicros", 2000);
+    //awake leaves below which their state is advanced on the game thread alone
+    private static final int LEAF_PARALLEL_THRESHOLD = 2048;
+    private static final int CHUNK_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    //run with -Dpepse.stats.overlay=true to show the frame stats on screen
+    private static final boolean SHOW_STATS_OVERLAY = Boolean.getBoolean("pepse.stats.overlay");
+    private static final int STATS_OVERLAY_LAYER = Layer.UI;
+    //run with -Dpepse.record=file to record the session's input, for InputReplay
+    private static final String RECORD_PROPERTY = "pepse.record";
+    //run with -Dpepse.terrain=<mode> to build the ground another way, e.g. TILE_MAP
+    private static final Terrain.Mode TERRAIN_MODE =
+            Terrain.Mode.valueOf(System.getProperty("pepse.terrain", Terrain.Mode.MERGED_COLUMNS.name()));
+    //run with -Dpepse.groundContact=true to land the avatar and leaves on the height map, not on blocks
+    private static final boolean GROUND_CONTACT = Boolean.getBoolean("pepse.groundContact");
+    //rows of the tile map above the lowest ground level (hills and trees), and rows in total (with caves)
+    private static final int TILE_ROWS_ABOVE_GROUND = 32;
+    private static final int TILE_ROWS = TILE_ROWS_ABOVE_GROUND + Long.SIZE;
 
-    //minimum and maximum x values of a current frame
-    private int minX;
-    private int maxX;
-
-    private Vector2 windowDimensions;
-    private Terrain terrain;
+    private final int seed;
+    private final FrameStats frameStats = new FrameStats();
+    private final SpatialIndex spatialIndex = new SpatialIndex(SpatialIndex.DEFAULT_BUCKET_WIDTH);
+    private final FrustumCuller culler = new FrustumCuller(spatialIndex);
+    private InputSource inputSource;
     private Avatar avatar;
-    private Tree tree;
-    
+    private ChunkManager chunkManager;
+    private LeafSystem leafSystem;
+    private float leafActiveHalfWidth;
+    private long chunkBudgetMicros = CHUNK_BUDGET_MICROS;
+    //whether the avatar and leaves stand on the ground by its height rather than by colliding with it
+    private boolean groundContact;
+
+    /**
+     * Creates a game controlled from the window's keyboard.
+     */
+    public PepseGameManager() {
+        this.seed = DEFAULT_SEED;
+    }
+
+    /**
+     * Creates a game controlled from the given input instead of the window's keyboard.
+     * @param inputSource tells which keys are pressed.
+     * @param seed the world seed.
+     */
+    public PepseGameManager(InputSource inputSource, int seed) {
+        this.inputSource = inputSource;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the timings and object counts of the recent frames.
+     */
+    public FrameStats frameStats() {
+        return frameStats;
+    }
+
+    /**
+     * @return the avatar.
+     */
+    public Avatar avatar() {
+        return avatar;
+    }
+
+    /**
+     * @return the system animating every leaf.
+     */
+    public LeafSystem leafSystem() {
+        return leafSystem;
+    }
+
+    /**
+     * @return the manager loading and unloading chunks around the avatar.
+     */
+    public ChunkManager chunkManager() {
+        return chunkManager;
+    }
+
+    /**
+     * Sets how long building and removing chunk objects may take per frame, instead of the
+     * -Dpepse.chunkBudgetMicros default. Runs that must be reproducible use 0, since how much fits
+     * in a time budget depends on the machine.
+     * @param micros the budget in microseconds, 0 for no limit.
+     */
+    public void setChunkBudget(long micros) {
+        chunkBudgetMicros = micros;
+        if (chunkManager != null) {
+            chunkManager.setFrameBudget(micros);
+        }
+    }
+
+    /**
+     * @return index of the world's objects by x coordinate.
+     */
+    public SpatialIndex spatialIndex() {
+        return spatialIndex;
+    }
+
     @Override
     public void update(float deltaTime) {
-        generateInfiniteWorld();
-        deleteFarObjects();
+        long frameStart = frameStats.begin();
+        inputSource.advance(deltaTime);
+        //the center is computed from the top left corner, getCenter would allocate a vector
+        float centerX = avatar.getTopLeftCorner().x() + avatar.getDimensions().x() / 2;
+        chunkManager.update(centerX, avatar.getVelocity().x());
+        frameStats.setChunkJobs(chunkManager.pendingColumns(), chunkManager.pendingRemovals(),
+                chunkManager.columnsBuilt());
+        long start = frameStats.begin();
+        leafSystem.setActiveRange(centerX - leafActiveHalfWidth, centerX + leafActiveHalfWidth);
+        leafSystem.update(deltaTime);
+        frameStats.end(FrameStats.Phase.LEAVES, start);
+        start = frameStats.begin();
         super.update(deltaTime);
+        frameStats.end(FrameStats.Phase.ENGINE, start);
+        frameStats.setCollisionPairs(WorldLayers.candidatePairs(frameStats.liveObjects(), groundContact),
+                WorldLayers.takeChecks());
+        spatialIndex.moved(avatar);
+        leafSystem.reindexFalling();
+        culler.cull(camera());
+        frameStats.setVisibility(culler.visibleCount(), culler.loadedCount());
+        frameStats.endFrame(frameStart);
     }
 
     /**
      * This method initializes a new game. It creates all game objects,
      * sets their values and initial positions and allow the start of a game.
-     * @param imageReader an object used to read images from the disc and render them.
+     * @param imageReader an object used to read images from the disc and render them,
+     *                    or null to create the game without images.
      * @param soundReader an object used to read sound files from the disc and render them.
      * @param inputListener a listener capable of reading user keyboard inputs.
      * @param windowController a controller used to control the window and its attributes.
@@ -62,18 +191,32 @@ public class PepseGameManager extends GameManager {
                                UserInputListener inputListener, WindowController windowController) {
         super.initializeGame(imageReader, soundReader, inputListener, windowController);
         Vector2 windowDimensions = windowController.getWindowDimensions();
-        this.windowDimensions = windowDimensions;
-        minX = 0;
-        maxX = (int) windowDimensions.x();
+        if (inputSource == null) {
+            inputSource = inputListener::isKeyPressed;
+        }
+        String recordPath = System.getProperty(RECORD_PROPERTY);
+        if (recordPath != null) {
+            recordInput(Path.of(recordPath), windowDimensions);
+        }
 
         //create sky
         Sky.create(this.gameObjects(), windowDimensions, Layer.BACKGROUND);
 
         //create terrain
-        Terrain terrain = new Terrain(this.gameObjects(), Layer.STATIC_OBJECTS,
-                windowController.getWindowDimensions(), SEED);
-        this.terrain = terrain;
-        terrain.createInRange(minX, maxX);
+        WorldPools pools = new WorldPools(BLOCK_POOL_CAPACITY, LEAF_POOL_CAPACITY);
+        frameStats.addPool(BLOCK_POOL_NAME, pools.blocks());
+        frameStats.addPool(LEAF_POOL_NAME, pools.leaves());
+        pools.setCuller(culler);
+        Terrain terrain = new Terrain(WorldLayers.SURFACE, windowController.getWindowDimensions(), seed,
+                pools);
+        terrain.setMode(TERRAIN_MODE);
+        TileMap tileMap = null;
+        if (TERRAIN_MODE == Terrain.Mode.TILE_MAP) {
+            tileMap = new TileMap(windowDimensions.y() - (TILE_ROWS_ABOVE_GROUND + 1) * Block.SIZE, TILE_ROWS);
+            gameObjects().addGameObject(tileMap, WorldLayers.SURFACE);
+            frameStats.objectAdded(WorldLayers.SURFACE);
+            terrain.setTileMap(tileMap);
+        }
 
         //create night
         Night.create(gameObjects(), Layer.FOREGROUND, windowController.getWindowDimensions(), CYCLE_LENGTH);
@@ -84,71 +227,83 @@ public class PepseGameManager extends GameManager {
 
         //create sunHalo
         GameObject sunHalo = SunHalo.create(gameObjects(), Layer.BACKGROUND + HALO_LAYER, sun, HALO_COLOR);
-        sunHalo.addComponent((deltaTime) -> sunHalo.setCenter(sun.getCenter()));
+        sunHalo.addComponent((deltaTime) -> sunHalo.transform().setCenter(
+                sun.getTopLeftCorner().x() + sun.getDimensions().x() / 2,
+                sun.getTopLeftCorner().y() + sun.getDimensions().y() / 2));
 
         //create tree
-        Tree tree = new Tree(terrain::groundHeightAt, gameObjects(), Layer.DEFAULT, SEED);
-        this.tree = tree;
-        tree.createInRange(minX, maxX);
+        LeafSystem leafSystem = new LeafSystem();
+        leafSystem.setSpatialIndex(spatialIndex);
+        leafSystem.setParallelUpdate(new ParallelUpdate(ForkJoinPool.commonPool(), LEAF_PARALLEL_THRESHOLD));
+        leafSystem.setGroundHeight(terrain::groundHeightAt);
+        leafActiveHalfWidth = windowDimensions.x() * (0.5f + LEAF_ACTIVE_MARGIN);
+        this.leafSystem = leafSystem;
+        Tree tree = new Tree(terrain::groundHeightAt, WorldLayers.TRUNKS, WorldLayers.LEAVES, seed, leafSystem,
+                pools);
+        GroundContact groundContact = null;
+        if (tileMap != null) {
+            tree.setTileMap(tileMap);
+            //leaves land on the ground between trunks, the avatar still stops at trunks through the sweep
+            groundContact = new GroundContact(tileMap::groundAt);
+            leafSystem.setGroundHeight(tileMap::groundAt);
+        } else if (GROUND_CONTACT) {
+            groundContact = new GroundContact(terrain.heightMap()::heightAt);
+        }
+        this.groundContact = groundContact != null;
+        WorldLayers.configure(gameObjects().layers(), this.groundContact);
+        leafSystem.setGroundContact(groundContact);
+
+        //load the chunks around the starting point
+        ChunkManager chunkManager = new ChunkManager(gameObjects(), terrain, tree, pools, frameStats, spatialIndex,
+                ADD_THRESHOLD * windowDimensions.x(), DELETE_THRESHOLD * windowDimensions.x(), CHUNK_WORKERS);
+        chunkManager.setCache(new ChunkCache(CHUNK_CACHE_CAPACITY));
+        chunkManager.setFrameBudget(chunkBudgetMicros);
+        this.chunkManager = chunkManager;
+        chunkManager.update(windowDimensions.x() / 2, 0);
+        chunkManager.finishJobs();
 
         //create avatar
         Vector2 initialAvatarLocation = new Vector2(windowDimensions.x() / 2,
                 terrain.groundHeightAt(windowDimensions.x() / 2) - Avatar.AVATAR_SIZE);
-        Avatar avatar = Avatar.create(gameObjects(), Layer.DEFAULT, initialAvatarLocation, inputListener,
+        Avatar avatar = Avatar.create(gameObjects(), WorldLayers.AVATAR, initialAvatarLocation, inputSource,
                 imageReader);
+        spatialIndex.add(avatar, WorldLayers.AVATAR);
+        frameStats.objectAdded(WorldLayers.AVATAR);
+        avatar.setTileMap(tileMap);
+        if (groundContact != null && tileMap == null) {
+            //the avatar stands on the indexed surface blocks, only the many leaves need the cheaper height map
+            avatar.setGroundContact(new GroundContact(x -> spatialIndex.nearestGround(x, WorldLayers.SURFACE)));
+        }
         this.avatar = avatar;
 
         //set camera on avatar (avatar always in the middle of the screen)
         setCamera(new Camera(avatar,
                 windowController.getWindowDimensions().mult(0.5f).subtract(initialAvatarLocation),
                 windowController.getWindowDimensions(), windowController.getWindowDimensions()));
-    }
+        if (tileMap != null) {
+            tileMap.followCamera(camera());
+        }
 
-    /**
-     * Generates new terrain and trees depending on location of avatar
-     */
-    private void generateInfiniteWorld() {
-        // go right
-        if (maxX - avatar.getCenter().x() < windowDimensions.x() * ADD_THRESHOLD) {
-            terrain.createInRange(maxX, (int) (maxX + windowDimensions.x()));
-            tree.createInRange(maxX, (int) (maxX + windowDimensions.x()));
-            maxX = (int) (maxX + windowDimensions.x());
-        // go left
-        } else if (avatar.getCenter().x() - minX < windowDimensions.x() * ADD_THRESHOLD) {
-            terrain.createInRange((int) (minX - windowDimensions.x()), minX);
-            tree.createInRange((int) (minX - windowDimensions.x()), minX);
-            minX = (int) (minX - windowDimensions.x());
+        if (SHOW_STATS_OVERLAY) {
+            StatsOverlay.create(gameObjects(), STATS_OVERLAY_LAYER, frameStats);
         }
     }
 
     /**
-     * Removes relevant game objects which are far from the avatar
+     * Records the input of the session from now on, and saves it when the game exits.
+     * @param path the file to save the recording to.
+     * @param windowDimensions the window dimensions, saved with the recording.
      */
-    private void deleteFarObjects() {
-        // go right
-        if (avatar.getCenter().x() - minX > DELETE_THRESHOLD * windowDimensions.x()) {
-            for (int layer : DELETABLE_LAYERS) {
-                for (GameObject block : gameObjects().objectsInLayer(layer)) {
-                    float blockRightDistance = avatar.getCenter().x() - block.getCenter().x();
-                    if (blockRightDistance > DELETE_THRESHOLD * windowDimensions.x()) {
-                        gameObjects().removeGameObject(block, layer);
-                    }
-                }
+    private void recordInput(Path path, Vector2 windowDimensions) {
+        InputRecorder recorder = new InputRecorder(inputSource);
+        inputSource = recorder;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                recorder.save(path, seed, windowDimensions);
+            } catch (IOException e) {
+                System.err.println("failed to save the input recording: " + e.getMessage());
             }
-            minX = (int) (minX + windowDimensions.x());
-        }
-        // go left
-        if (maxX - avatar.getCenter().x() > DELETE_THRESHOLD * windowDimensions.x()) {
-            for (int layer : DELETABLE_LAYERS) {
-                for (GameObject block : gameObjects().objectsInLayer(layer)) {
-                    float blockLeftDistance = block.getCenter().x() - avatar.getCenter().x();
-                    if (blockLeftDistance > DELETE_THRESHOLD * windowDimensions.x()) {
-                        gameObjects().removeGameObject(block, layer);
-                    }
-                }
-            }
-            maxX = (int) (maxX - windowDimensions.x());
-        }
+        }));
     }
 
     /**
@@ -0,0 +1,80 @@
+package pepse;
+
+import pepse.util.InputSource;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input that presses keys according to a looping script of timed segments.
+ * Used to drive the avatar when the game runs without a window.
+ */
+public class ScriptedInput implements InputSource {
+    private final List<Float> durations = new ArrayList<>();
+    private final List<int[]> pressedKeys = new ArrayList<>();
+    private float totalDuration;
+    private float time;
+    private int segment;
+    private float segmentEnd;
+
+    /**
+     * Appends a segment to the script.
+     * @param duration seconds the segment lasts.
+     * @param keyCodes keys held during the segment, as in java.awt.event.KeyEvent.
+     * @return this input, for chaining.
+     */
+    public ScriptedInput then(float duration, int... keyCodes) {
+        durations.add(duration);
+        pressedKeys.add(keyCodes);
+        totalDuration += duration;
+        if (durations.size() == 1) {
+            segmentEnd = duration;
+        }
+        return this;
+    }
+
+    /**
+     * Creates a script that walks right, jumps, flies and walks back left.
+     * @return the script.
+     */
+    public static ScriptedInput explorer() {
+        return new ScriptedInput()
+                .then(20, KeyEvent.VK_RIGHT)
+                .then(0.5f, KeyEvent.VK_SPACE)
+                .then(10, KeyEvent.VK_RIGHT)
+                .then(2, KeyEvent.VK_SPACE, KeyEvent.VK_SHIFT)
+                .then(3)
+                .then(25, KeyEvent.VK_LEFT);
+    }
+
+    @Override
+    public boolean isKeyPressed(int keyCode) {
+        if (pressedKeys.isEmpty()) {
+            return false;
+        }
+        for (int pressed : pressedKeys.get(segment)) {
+            if (pressed == keyCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void advance(float deltaTime) {
+        if (durations.isEmpty()) {
+            return;
+        }
+        time += deltaTime;
+        while (time >= segmentEnd) {
+            if (segment == durations.size() - 1) {
+                //loop the script
+                time -= totalDuration;
+                segmentEnd -= totalDuration;
+            }
+            segment = (segment + 1) % durations.size();
+            segmentEnd += durations.get(segment);
+        }
+    }
+}
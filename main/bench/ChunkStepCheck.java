@@ -0,0 +1,91 @@
+package pepse.bench;
+
+import danogl.collisions.GameObjectCollection;
+import danogl.util.Vector2;
+import pepse.HeadlessSimulation;
+import pepse.ScriptedInput;
+import pepse.util.FrameStats;
+import pepse.world.Chunk;
+import pepse.world.ChunkData;
+import pepse.world.SpatialIndex;
+import pepse.world.Terrain;
+import pepse.world.WorldLayers;
+import pepse.world.WorldPools;
+
+/**
+ * Checks that building a chunk's ground step by step, the way ChunkManager spreads it over frames,
+ * creates exactly as many objects as building the whole chunk at once, in every block based terrain mode.
+ * Exits with status 1 if any chunk differs.
+ * Usage: ChunkStepCheck
+ */
+public class ChunkStepCheck {
+    private static final Vector2 WINDOW_DIMENSIONS = new Vector2(1920, 1080);
+    private static final int[] SEEDS = {22, 508};
+    private static final int FIRST_CHUNK = -64;
+    private static final int LAST_CHUNK = 64;
+    private static final int POOL_CAPACITY = 4096;
+    private static final Terrain.Mode[] MODES =
+            {Terrain.Mode.BLOCKS, Terrain.Mode.MERGED_COLUMNS, Terrain.Mode.BAKED, Terrain.Mode.CAVES};
+
+    /**
+     * Builds every checked chunk of one mode and seed both ways and compares their object counts.
+     * @param mode the terrain mode.
+     * @param seed the world seed.
+     * @param gameObjects the collection the chunks add their objects to.
+     * @return number of chunks whose counts differ.
+     */
+    private static int check(Terrain.Mode mode, int seed, GameObjectCollection gameObjects) {
+        WorldPools pools = new WorldPools(POOL_CAPACITY, POOL_CAPACITY);
+        FrameStats stats = new FrameStats();
+        SpatialIndex spatialIndex = new SpatialIndex(SpatialIndex.DEFAULT_BUCKET_WIDTH);
+        Terrain terrain = new Terrain(WorldLayers.SURFACE, WINDOW_DIMENSIONS, seed, pools);
+        terrain.setMode(mode);
+        int mismatches = 0;
+        long objects = 0;
+        for (int index = FIRST_CHUNK; index <= LAST_CHUNK; index++) {
+            ChunkData data = new ChunkData(index);
+            terrain.prepareChunk(data);
+            Chunk whole = new Chunk(data, gameObjects, stats, spatialIndex);
+            terrain.createInChunk(whole);
+            int wholeCount = whole.objectCount();
+            whole.unload(pools::recycle);
+            Chunk stepped = new Chunk(data, gameObjects, stats, spatialIndex);
+            for (int column = 0; column < Chunk.COLUMNS; ) {
+                int stepEnd = terrain.stepEnd(data, column);
+                terrain.createColumns(stepped, column, stepEnd);
+                column = stepEnd;
+            }
+            int steppedCount = stepped.objectCount();
+            stepped.unload(pools::recycle);
+            objects += wholeCount;
+            if (steppedCount != wholeCount) {
+                mismatches++;
+                System.out.printf("%s seed %d chunk %d: %d objects whole, %d step by step%n",
+                        mode, seed, index, wholeCount, steppedCount);
+            }
+        }
+        System.out.printf("%-16s %6d %10d %10d%n", mode, seed, objects, mismatches);
+        return mismatches;
+    }
+
+    /**
+     * Runs the check for every mode and seed.
+     * @param args unused.
+     */
+    public static void main(String[] args) {
+        GameObjectCollection gameObjects = new HeadlessSimulation(WINDOW_DIMENSIONS, ScriptedInput.explorer(),
+                SEEDS[0]).gameManager().gameObjects();
+        System.out.printf("%-16s %6s %10s %10s%n", "mode", "seed", "objects", "mismatches");
+        int mismatches = 0;
+        for (Terrain.Mode mode : MODES) {
+            for (int seed : SEEDS) {
+                mismatches += check(mode, seed, gameObjects);
+            }
+        }
+        if (mismatches > 0) {
+            System.out.printf("%d chunks built differently step by step%n", mismatches);
+            System.exit(1);
+        }
+        System.out.println("every chunk built step by step matches the chunk built at once");
+    }
+}
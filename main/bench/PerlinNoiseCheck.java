@@ -0,0 +1,91 @@
+package pepse.bench;
+
+import pepse.util.PerlinNoise;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the 1D fast path of PerlinNoise gives the same values as the general path:
+ * noise(x) against noise(x, 0), which sums the same octaves through the full 3D smoothNoise.
+ * Values must be equal (0 and -0 count as equal), both for the inputs the terrain asks for and for a
+ * sweep of negative, fractional and large coordinates.
+ * Exits with status 1 if any value differs.
+ * Usage: PerlinNoiseCheck
+ */
+public class PerlinNoiseCheck {
+    //integral seeds take the fast path, the last one does not
+    private static final double[] SEEDS = {530, 1016, 0, -7, 530.5};
+    private static final int[] OCTAVES = {-1, 3};
+    private static final double CONTINUOUS_COEFFICIENT = 0.05f;
+    private static final int BLOCK_SIZE = 30;
+    private static final int TERRAIN_COLUMNS = 200_000;
+    private static final int SWEEP_SAMPLES = 200_000;
+    //largest coordinate of the sweep, far beyond the 256 cell period of the permutation
+    private static final double SWEEP_RANGE = 1e7;
+    private static final double[] SPECIAL_VALUES = {0, -0.0, 1, -1, 0.5, -0.5, 255, 256, -256, 1e9, -1e9};
+    private static final long SWEEP_SEED = 42;
+
+    /**
+     * Compares the two paths for one input.
+     * @param noise the generator.
+     * @param x the coordinate.
+     * @return 1 if the values differ, 0 otherwise.
+     */
+    private static int compare(PerlinNoise noise, double x) {
+        double fast = noise.noise(x);
+        double general = noise.noise(x, 0);
+        if (fast == general) {
+            return 0;
+        }
+        System.out.printf("x = %s: noise(x) = %s, noise(x, 0) = %s%n", x, fast, general);
+        return 1;
+    }
+
+    /**
+     * Compares the two paths over every checked input for one generator.
+     * @param seed the generator's seed.
+     * @param octaves the generator's octave count, negative for the default.
+     * @return number of inputs whose values differ.
+     */
+    private static int check(double seed, int octaves) {
+        PerlinNoise noise = octaves < 0 ? new PerlinNoise(seed) : new PerlinNoise(seed, octaves);
+        int mismatches = 0;
+        int samples = 0;
+        for (int column = -TERRAIN_COLUMNS / 2; column < TERRAIN_COLUMNS / 2; column++) {
+            mismatches += compare(noise, CONTINUOUS_COEFFICIENT * column * BLOCK_SIZE);
+            samples++;
+        }
+        //a fixed stream of coordinates spread over every magnitude up to the sweep range
+        SplittableRandom random = new SplittableRandom(SWEEP_SEED);
+        for (int i = 0; i < SWEEP_SAMPLES; i++) {
+            double magnitude = Math.pow(SWEEP_RANGE, random.nextDouble());
+            mismatches += compare(noise, random.nextBoolean() ? magnitude : -magnitude);
+            samples++;
+        }
+        for (double x : SPECIAL_VALUES) {
+            mismatches += compare(noise, x);
+            samples++;
+        }
+        System.out.printf("%8s %8d %10d %10d%n", seed, octaves, samples, mismatches);
+        return mismatches;
+    }
+
+    /**
+     * Runs the check for every seed and octave count.
+     * @param args unused.
+     */
+    public static void main(String[] args) {
+        System.out.printf("%8s %8s %10s %10s%n", "seed", "octaves", "samples", "mismatches");
+        int mismatches = 0;
+        for (double seed : SEEDS) {
+            for (int octaves : OCTAVES) {
+                mismatches += check(seed, octaves);
+            }
+        }
+        if (mismatches > 0) {
+            System.out.printf("%d values differ between noise(x) and noise(x, 0)%n", mismatches);
+            System.exit(1);
+        }
+        System.out.println("noise(x) equals noise(x, 0) for every checked value");
+    }
+}
@@ -0,0 +1,140 @@
+package pepse.bench;
+
+import danogl.util.Vector2;
+import pepse.HeadlessSimulation;
+import pepse.InputRecorder;
+import pepse.InputReplay;
+import pepse.PepseGameManager;
+import pepse.ScriptedInput;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Replays a recorded session headlessly as a benchmark, and reports the frame time distribution,
+ * the allocations and a checksum of the final world state, so builds can be compared on the same
+ * realistic workload. Every run of the same recording must end with the same checksum, so chunks are
+ * built and removed without a time budget: what fits in one would depend on the machine.
+ * Usage: ReplayBenchmark recording [runs]
+ *        ReplayBenchmark record recording [seconds] - records the explorer script headlessly.
+ */
+public class ReplayBenchmark {
+    private static final int DEFAULT_RUNS = 3;
+    private static final int DEFAULT_SEED = 22;
+    private static final Vector2 DEFAULT_WINDOW_DIMENSIONS = new Vector2(1920, 1080);
+    private static final float DEFAULT_RECORDED_SECONDS = 600;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+    private static final String RECORD_COMMAND = "record";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Replays a recording once and prints its statistics.
+     * @param recording the recording file.
+     * @param run number of the run, for the report.
+     * @return checksum of the world state after the last tick.
+     * @throws IOException if the recording cannot be read.
+     */
+    private static long replay(Path recording, int run) throws IOException {
+        InputReplay replay = InputReplay.load(recording);
+        HeadlessSimulation simulation = new HeadlessSimulation(replay.windowDimensions(), replay, replay.seed());
+        simulation.gameManager().setChunkBudget(0);
+        long[] frameNanos = new long[replay.tickCount()];
+        int frames = 0;
+        long startBytes = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        while (replay.hasNextTick()) {
+            long frameStart = System.nanoTime();
+            simulation.step(replay.nextDeltaTime());
+            frameNanos[frames++] = System.nanoTime() - frameStart;
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_IN_SECOND;
+        long bytes = THREADS.getCurrentThreadAllocatedBytes() - startBytes;
+        Arrays.sort(frameNanos, 0, frames);
+        long checksum = checksum(simulation.gameManager());
+        System.out.printf("%4d %8d %9.3f %9.3f %9.3f %9.3f %12.1f %11.1f %016x%n", run, frames,
+                percentile(frameNanos, frames, 50), percentile(frameNanos, frames, 90),
+                percentile(frameNanos, frames, 99), percentile(frameNanos, frames, 100),
+                (double) bytes / Math.max(1, frames), bytes / BYTES_IN_MEGABYTE / seconds, checksum);
+        return checksum;
+    }
+
+    /**
+     * Gets a percentile of sorted frame times.
+     * @param sortedNanos frame times in nanoseconds, sorted.
+     * @param count number of frame times.
+     * @param percentile the percentile, in the range [0, 100].
+     * @return the frame time, in milliseconds.
+     */
+    private static double percentile(long[] sortedNanos, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+        return sortedNanos[Math.max(0, index)] / NANOS_IN_MILLI;
+    }
+
+    /**
+     * Hashes the state of the world: where the avatar is, how many objects each loaded chunk and each
+     * layer has, and the state of every leaf. Everything random in the world is hashed from the seed
+     * and a position, so there is no random generator state to hash.
+     * @param gameManager the simulated game.
+     * @return the checksum.
+     */
+    private static long checksum(PepseGameManager gameManager) {
+        long checksum = Float.floatToIntBits(gameManager.avatar().getTopLeftCorner().x());
+        checksum = checksum * 31 + Float.floatToIntBits(gameManager.avatar().getTopLeftCorner().y());
+        checksum = checksum * 31 + Float.floatToIntBits(gameManager.avatar().getVelocity().x());
+        checksum = checksum * 31 + Float.floatToIntBits(gameManager.avatar().getVelocity().y());
+        checksum = checksum * 31 + gameManager.spatialIndex().size();
+        checksum = checksum * 31 + gameManager.frameStats().liveObjects().hashCode();
+        checksum = checksum * 31 + gameManager.chunkManager().stateHash();
+        checksum = checksum * 31 + gameManager.leafSystem().stateHash();
+        return checksum;
+    }
+
+    /**
+     * Records the explorer script headlessly.
+     * @param recording the file to write.
+     * @param seconds seconds of game time to record.
+     * @throws IOException if the recording cannot be written.
+     */
+    private static void record(Path recording, float seconds) throws IOException {
+        InputRecorder recorder = new InputRecorder(ScriptedInput.explorer());
+        HeadlessSimulation simulation = new HeadlessSimulation(DEFAULT_WINDOW_DIMENSIONS, recorder, DEFAULT_SEED);
+        simulation.run(seconds);
+        recorder.save(recording, DEFAULT_SEED, DEFAULT_WINDOW_DIMENSIONS);
+        System.out.printf("recorded %d ticks to %s%n", recorder.tickCount(), recording);
+    }
+
+    /**
+     * Replays a recording several times, or records one.
+     * @param args the recording and optional number of runs, or "record", the recording and
+     *             optional seconds to record.
+     * @throws IOException if the recording cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals(RECORD_COMMAND)) {
+            record(Path.of(args[1]), args.length >= 3 ? Float.parseFloat(args[2]) : DEFAULT_RECORDED_SECONDS);
+            return;
+        }
+        Path recording = Path.of(args[0]);
+        int runs = args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+        System.out.printf("%4s %8s %9s %9s %9s %9s %12s %11s %16s%n", "run", "frames", "p50 ms", "p90 ms",
+                "p99 ms", "max ms", "bytes/frame", "alloc MB/s", "state checksum");
+        long firstChecksum = 0;
+        for (int run = 0; run < runs; run++) {
+            long checksum = replay(recording, run);
+            if (run == 0) {
+                firstChecksum = checksum;
+            } else if (checksum != firstChecksum) {
+                System.out.println("run " + run + " ended in a different world state than run 0");
+            }
+        }
+    }
+}
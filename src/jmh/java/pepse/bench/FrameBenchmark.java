@@ -0,0 +1,69 @@
+package pepse.bench;
+
+import danogl.util.Vector2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pepse.HeadlessSimulation;
+import pepse.ScriptedInput;
+import pepse.util.ColorSupplier;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the frame loop: a whole headless frame of the game, for every combination of window width
+ * and seed, and the color variation every new block and leaf asks for.
+ * Run with gradle jmh, which adds the gc profiler for the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+    private static final float WINDOW_HEIGHT = 1080;
+    private static final Color BASE_COLOR = new Color(212, 123, 74);
+
+    @Param({"1280", "1920", "3840"})
+    public int width;
+    @Param({"22", "508"})
+    public int seed;
+
+    private HeadlessSimulation simulation;
+
+    /**
+     * Builds the world for the trial's window width and seed, explored by the scripted walk.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulation = new HeadlessSimulation(new Vector2(width, WINDOW_HEIGHT), ScriptedInput.explorer(), seed);
+    }
+
+    /**
+     * Simulates one frame: input, avatar, chunks, leaves and the engine's update.
+     */
+    @Benchmark
+    public void gameManagerUpdate() {
+        simulation.step();
+    }
+
+    /**
+     * @return a slightly varied ground color.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Color approximateColor() {
+        return ColorSupplier.approximateColor(BASE_COLOR);
+    }
+}
@@ -0,0 +1,85 @@
+package pepse.bench;
+
+import danogl.util.Vector2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pepse.util.ParallelUpdate;
+import pepse.world.Block;
+import pepse.world.trees.Leaf;
+import pepse.world.trees.LeafSystem;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of one frame of the leaf system, advancing every leaf on the calling thread or split
+ * over the common fork-join pool, for every seed. The window width does not change the leaves' work.
+ * Run with gradle jmh, which adds the gc profiler for the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeafSystemBenchmark {
+    //leaves animated by the leaf systems, about as many as hundreds of loaded trees have
+    private static final int BENCHMARK_LEAVES = 16384;
+    private static final float FRAME_TIME = 1 / 60f;
+
+    @Param({"22", "508"})
+    public int seed;
+
+    private LeafSystem serialLeaves;
+    private LeafSystem parallelLeaves;
+
+    /**
+     * Creates the leaf systems for the trial's seed.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        serialLeaves = leafSystem(new ParallelUpdate(null, 0));
+        parallelLeaves = leafSystem(new ParallelUpdate(ForkJoinPool.commonPool(), 0));
+    }
+
+    /**
+     * Creates a leaf system animating a fixed number of leaves, all awake.
+     * @param parallelUpdate how the system advances its leaves.
+     * @return the leaf system.
+     */
+    private LeafSystem leafSystem(ParallelUpdate parallelUpdate) {
+        LeafSystem leafSystem = new LeafSystem();
+        leafSystem.setParallelUpdate(parallelUpdate);
+        for (int i = 0; i < BENCHMARK_LEAVES; i++) {
+            Leaf leaf = new Leaf(new Vector2(i * Block.SIZE, 0), new Vector2(Block.SIZE, Block.SIZE), null);
+            leafSystem.add(leaf, seed + i);
+        }
+        return leafSystem;
+    }
+
+    /**
+     * Advances every leaf by one frame on the calling thread.
+     */
+    @Benchmark
+    public void updateSerial() {
+        serialLeaves.update(FRAME_TIME);
+    }
+
+    /**
+     * Advances every leaf by one frame, split over the common fork-join pool.
+     */
+    @Benchmark
+    public void updateParallel() {
+        parallelLeaves.update(FRAME_TIME);
+    }
+}
@@ -0,0 +1,233 @@
+package pepse.bench;
+
+import danogl.collisions.GameObjectCollection;
+import danogl.util.Vector2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pepse.HeadlessSimulation;
+import pepse.ScriptedInput;
+import pepse.util.FrameStats;
+import pepse.util.PerlinNoise;
+import pepse.world.Block;
+import pepse.world.Chunk;
+import pepse.world.ChunkData;
+import pepse.world.SpatialIndex;
+import pepse.world.Terrain;
+import pepse.world.WorldLayers;
+import pepse.world.WorldPools;
+import pepse.world.trees.LeafSystem;
+import pepse.world.trees.Tree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of world generation: the noise, the height map, and preparing and building chunks,
+ * for every combination of window width and seed.
+ * Chunks are prepared before, and unloaded after, every measured creation, outside the measured time.
+ * Run with gradle jmh, which adds the gc profiler for the bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldGenerationBenchmark {
+    private static final float WINDOW_HEIGHT = 1080;
+    private static final int LOOKS_GOOD_SEED = 508;
+    private static final double CONTINUOUS_COEFFICIENT = 0.05f;
+    private static final int POOL_CAPACITY = 4096;
+
+    /**
+     * A generated world without a game loop, and the index of the next input to generate.
+     */
+    @State(Scope.Thread)
+    public static class World {
+        @Param({"1280", "1920", "3840"})
+        public int width;
+        @Param({"22", "508"})
+        public int seed;
+
+        private GameObjectCollection gameObjects;
+        private WorldPools pools;
+        private FrameStats stats;
+        private SpatialIndex spatialIndex;
+        private Terrain terrain;
+        private Tree tree;
+        private PerlinNoise noise;
+        //varies the input of every call, so nothing is served from a cache unless the benchmark means it
+        private long index;
+
+        /**
+         * Builds the world for the trial's window width and seed.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            Vector2 windowDimensions = new Vector2(width, WINDOW_HEIGHT);
+            gameObjects = new HeadlessSimulation(windowDimensions, ScriptedInput.explorer(), seed)
+                    .gameManager().gameObjects();
+            pools = new WorldPools(POOL_CAPACITY, POOL_CAPACITY);
+            stats = new FrameStats();
+            spatialIndex = new SpatialIndex(SpatialIndex.DEFAULT_BUCKET_WIDTH);
+            terrain = new Terrain(WorldLayers.SURFACE, windowDimensions, seed, pools);
+            terrain.setMode(Terrain.Mode.MERGED_COLUMNS);
+            tree = new Tree(terrain::groundHeightAt, WorldLayers.TRUNKS, WorldLayers.LEAVES, seed,
+                    new LeafSystem(), pools);
+            noise = new PerlinNoise(seed + LOOKS_GOOD_SEED);
+        }
+
+        /**
+         * Prepares the data of a new chunk.
+         * @param withTrees true to prepare the chunk's trees as well.
+         * @return the chunk data.
+         */
+        private ChunkData prepareChunk(boolean withTrees) {
+            ChunkData data = new ChunkData((int) index++);
+            terrain.prepareChunk(data);
+            if (withTrees) {
+                tree.prepareChunk(data);
+            }
+            return data;
+        }
+
+        /**
+         * Unloads a chunk and forgets the heights of its columns.
+         * @param chunk the chunk.
+         */
+        private void unloadChunk(Chunk chunk) {
+            chunk.unload(pools::recycle);
+            terrain.heightMap().evictFarFrom(chunk.minX(), 0);
+        }
+    }
+
+    /**
+     * A chunk whose ground is built by the measured call.
+     */
+    @State(Scope.Thread)
+    public static class GroundChunk {
+        private Chunk chunk;
+
+        /**
+         * Prepares the chunk.
+         * @param world the world the chunk belongs to.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(World world) {
+            chunk = new Chunk(world.prepareChunk(false), world.gameObjects, world.stats, world.spatialIndex);
+        }
+
+        /**
+         * Unloads the chunk.
+         * @param world the world the chunk belongs to.
+         */
+        @TearDown(Level.Invocation)
+        public void unload(World world) {
+            world.unloadChunk(chunk);
+        }
+    }
+
+    /**
+     * A chunk whose trees are built by the measured call.
+     */
+    @State(Scope.Thread)
+    public static class TreeChunk {
+        private Chunk chunk;
+
+        /**
+         * Prepares the chunk and its trees.
+         * @param world the world the chunk belongs to.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(World world) {
+            chunk = new Chunk(world.prepareChunk(true), world.gameObjects, world.stats, world.spatialIndex);
+        }
+
+        /**
+         * Unloads the chunk.
+         * @param world the world the chunk belongs to.
+         */
+        @TearDown(Level.Invocation)
+        public void unload(World world) {
+            world.unloadChunk(chunk);
+        }
+    }
+
+    /**
+     * @param world the world.
+     * @return the noise at the next terrain column.
+     */
+    @Benchmark
+    public double perlinNoise(World world) {
+        return world.noise.noise(CONTINUOUS_COEFFICIENT * world.index++ * Block.SIZE);
+    }
+
+    /**
+     * @param world the world.
+     * @return the ground height at the next x coordinate inside the window, whose chunks stay cached.
+     */
+    @Benchmark
+    public float groundHeightAtCached(World world) {
+        return world.terrain.groundHeightAt(world.index++ % world.width);
+    }
+
+    /**
+     * @param world the world.
+     * @return the ground height of the next column, whose chunk is dropped once all of its columns were read.
+     */
+    @Benchmark
+    public float groundHeightAtUncached(World world) {
+        long column = world.index++;
+        float x = column * Block.SIZE;
+        float height = world.terrain.groundHeightAt(x);
+        if (column % Chunk.COLUMNS == Chunk.COLUMNS - 1) {
+            world.terrain.heightMap().evictFarFrom(x, 0);
+        }
+        return height;
+    }
+
+    /**
+     * @param world the world.
+     * @return the prepared data of the next chunk.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ChunkData terrainPrepareChunk(World world) {
+        ChunkData data = world.prepareChunk(false);
+        world.terrain.heightMap().evictFarFrom(data.minX(), 0);
+        return data;
+    }
+
+    /**
+     * @param world the world.
+     * @param ground the prepared chunk.
+     * @return number of objects created.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int terrainCreateInChunk(World world, GroundChunk ground) {
+        world.terrain.createInChunk(ground.chunk);
+        return ground.chunk.objectCount();
+    }
+
+    /**
+     * @param world the world.
+     * @param trees the prepared chunk.
+     * @return number of objects created.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int treeCreateInChunk(World world, TreeChunk trees) {
+        world.tree.createInChunk(trees.chunk);
+        return trees.chunk.objectCount();
+    }
+}
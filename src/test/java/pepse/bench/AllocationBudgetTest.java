@@ -0,0 +1,91 @@
+package pepse.bench;
+
+import danogl.util.Vector2;
+import org.junit.jupiter.api.Test;
+import pepse.HeadlessSimulation;
+import pepse.ScriptedInput;
+import pepse.util.FrameStats;
+
+import java.awt.event.KeyEvent;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that steady-state frames stay within an allocation budget.
+ * Each scenario warms the world up, then measures the bytes the game thread allocates in every frame,
+ * skipping frames that load or unload chunks. The engine's own per-frame garbage is counted too;
+ * project code itself should add nothing.
+ * Baseline, measured headlessly against a stand-in for the engine whose transform setters allocate a
+ * vector per call: walk 3.3 KB per frame on average and 4.4 KB at most, fly 3.2 KB and 4.2 KB
+ * (with -Dpepse.groundContact=true about 2.0 KB and 4.0 KB). An allocation profile put all of it in the
+ * engine's transform setters and object iteration, none in project code. The budget is the largest
+ * frame plus a third. Against another engine build, measure it with -PallocationBudget set high, which
+ * reports every scenario's largest frame, and set the budget from that.
+ */
+public class AllocationBudgetTest {
+    private static final long DEFAULT_BUDGET_BYTES = 6 * 1024;
+    //gradle test -PallocationBudget=bytes sets it
+    private static final long BUDGET_BYTES = Long.getLong("pepse.allocationBudget", DEFAULT_BUDGET_BYTES);
+    private static final Vector2 WINDOW_DIMENSIONS = new Vector2(1920, 1080);
+    private static final int SEED = 22;
+    private static final float WARMUP_SECONDS = 20;
+    private static final int MEASURED_FRAMES = 1200;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Measures one scenario, prints its allocations and fails if a frame went over the budget.
+     * @param name the scenario's name.
+     * @param input the scenario's input script.
+     */
+    private static void measure(String name, ScriptedInput input) {
+        HeadlessSimulation simulation = new HeadlessSimulation(WINDOW_DIMENSIONS, input, SEED);
+        FrameStats stats = simulation.gameManager().frameStats();
+        simulation.run(WARMUP_SECONDS);
+        long maxBytes = 0;
+        long totalBytes = 0;
+        int measured = 0;
+        int overBudget = 0;
+        for (int frame = 0; frame < MEASURED_FRAMES; frame++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            simulation.step();
+            long bytes = THREADS.getCurrentThreadAllocatedBytes() - before;
+            if (stats.createdLastFrame() > 0 || stats.removedLastFrame() > 0) {
+                //a chunk boundary was crossed, not a steady-state frame
+                continue;
+            }
+            measured++;
+            totalBytes += bytes;
+            maxBytes = Math.max(maxBytes, bytes);
+            if (bytes > BUDGET_BYTES) {
+                overBudget++;
+            }
+        }
+        System.out.printf("%s: %d frames, %.1f bytes per frame, at most %d bytes%n", name, measured,
+                (double) totalBytes / Math.max(1, measured), maxBytes);
+        assertEquals(0, overBudget, String.format("%d %s frames allocated more than %d bytes, at most %d",
+                overBudget, name, BUDGET_BYTES, maxBytes));
+    }
+
+    /**
+     * Walks back and forth without crossing a chunk boundary.
+     */
+    @Test
+    public void walkStaysWithinBudget() {
+        measure("walk", new ScriptedInput()
+                .then(1, KeyEvent.VK_RIGHT)
+                .then(1, KeyEvent.VK_LEFT));
+    }
+
+    /**
+     * Flies up and falls back down in place.
+     */
+    @Test
+    public void flyStaysWithinBudget() {
+        measure("fly", new ScriptedInput()
+                .then(0.5f, KeyEvent.VK_SPACE, KeyEvent.VK_SHIFT)
+                .then(0.5f));
+    }
+}
@@ -1,15 +1,86 @@
 package pepse.util;
 
+import danogl.gui.rendering.RectangleRenderable;
+
 import java.awt.*;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Provides procedurally-generated colors around a pivot.
+ * Besides fresh random colors, it offers a fixed palette of variants per base color,
+ * with one shared renderable per variant, picked by hashing a position.
  * @author Dan Nirel
  */
 public final class ColorSupplier {
+    public static final int PALETTE_SIZE = 16;
     private static final int DEFAULT_COLOR_DELTA = 10;
-    private final static Random random = new Random();
+    //salts of the three channels of a palette variant
+    private static final long RED_SALT = 1;
+    private static final long GREEN_SALT = 2;
+    private static final long BLUE_SALT = 3;
+    private static final Map<Color, Palette> palettes = new ConcurrentHashMap<>();
+    private static final Map<Color, RectangleRenderable> solidRenderables = new ConcurrentHashMap<>();
+
+    /**
+     * The variants of one base color, and a renderable for each of them.
+     */
+    private static final class Palette {
+        private final Color[] colors = new Color[PALETTE_SIZE];
+        private final RectangleRenderable[] renderables = new RectangleRenderable[PALETTE_SIZE];
+
+        private Palette(Color baseColor) {
+            for (int variant = 0; variant < PALETTE_SIZE; variant++) {
+                colors[variant] = new Color(
+                        hashedChannel(baseColor.getRed(), baseColor.getRGB(), variant, RED_SALT),
+                        hashedChannel(baseColor.getGreen(), baseColor.getRGB(), variant, GREEN_SALT),
+                        hashedChannel(baseColor.getBlue(), baseColor.getRGB(), variant, BLUE_SALT));
+                renderables[variant] = new RectangleRenderable(colors[variant]);
+            }
+        }
+    }
+
+    /**
+     * Picks a palette variant for a position.
+     * @param seed the world seed.
+     * @param position a position, usually a block column.
+     * @param salt distinguishes independent colors at the same position.
+     * @return a variant in the range [0, PALETTE_SIZE).
+     */
+    public static int variantAt(long seed, long position, long salt) {
+        return PositionHash.nextInt(seed, position, salt, PALETTE_SIZE);
+    }
+
+    /**
+     * Returns a palette variant of baseColor, within the default delta of it.
+     * The same base color and variant always give the same color.
+     * @param baseColor A color that we wish to approximate.
+     * @param variant the variant, in the range [0, PALETTE_SIZE).
+     * @return A color similar to baseColor.
+     */
+    public static Color paletteColor(Color baseColor, int variant) {
+        return palettes.computeIfAbsent(baseColor, Palette::new).colors[variant];
+    }
+
+    /**
+     * Returns the shared renderable of a palette variant of baseColor.
+     * @param baseColor A color that we wish to approximate.
+     * @param variant the variant, in the range [0, PALETTE_SIZE).
+     * @return A rectangle renderable of a color similar to baseColor.
+     */
+    public static RectangleRenderable paletteRenderable(Color baseColor, int variant) {
+        return palettes.computeIfAbsent(baseColor, Palette::new).renderables[variant];
+    }
+
+    /**
+     * Returns the shared renderable of a constant color.
+     * @param color the color.
+     * @return A rectangle renderable of the given color.
+     */
+    public static RectangleRenderable solidRenderable(Color color) {
+        return solidRenderables.computeIfAbsent(color, RectangleRenderable::new);
+    }
 
     /**
      * Returns a color similar to baseColor, with a default delta.
@@ -44,7 +115,21 @@ public final class ColorSupplier {
      * @return A random number in the range [min, max], clipped to [0,255].
      */
     private static int randomChannelInRange(int min, int max) {
-        int channel = random.nextInt(max-min+1) + min;
+        int channel = ThreadLocalRandom.current().nextInt(max-min+1) + min;
+        return Math.min(255, Math.max(channel, 0));
+    }
+
+    /**
+     * Generates a channel value within the default delta of a base channel, from a hash.
+     * @param baseChannel the channel of the base color.
+     * @param baseRGB the base color, seeds the hash.
+     * @param variant the palette variant.
+     * @param salt distinguishes the channels.
+     * @return A channel value, clipped to [0,255].
+     */
+    private static int hashedChannel(int baseChannel, int baseRGB, int variant, long salt) {
+        int channel = baseChannel - DEFAULT_COLOR_DELTA +
+                PositionHash.nextInt(baseRGB, variant, salt, 2 * DEFAULT_COLOR_DELTA + 1);
         return Math.min(255, Math.max(channel, 0));
     }
 }
@@ -0,0 +1,368 @@
+package pepse.util;
+
+import jdk.jfr.EventType;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects per-frame timings and object counts.
+ * Keeps the cost of every phase over the last frames (for percentiles), live object counts per layer,
+ * and the number of objects created and removed in each frame, as well as the counters of the object pools.
+ * Every measured phase is also reported as a Flight Recorder event. The overlay and the CSV/JSON dumps
+ * all read from here.
+ */
+public class FrameStats {
+    /**
+     * The measured parts of a frame.
+     */
+    public enum Phase {
+        /** the whole frame. */
+        FRAME,
+        /** creating ground objects of loaded chunks. */
+        TERRAIN,
+        /** creating trees of loaded chunks. */
+        TREES,
+        /** removing the objects of unloaded chunks. */
+        UNLOAD,
+        /** animating the leaves. */
+        LEAVES,
+        /** the engine's update of all game objects, including collisions. */
+        ENGINE
+    }
+
+    private static final int WINDOW = 600;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final Phase[] PHASES = Phase.values();
+    private static final EventType PHASE_EVENT_TYPE = EventType.getEventType(PhaseEvent.class);
+
+    private final long[][] costs = new long[PHASES.length][WINDOW];
+    private final long[] currentCosts = new long[PHASES.length];
+    private final Map<Integer, Integer> liveObjects = new TreeMap<>();
+    //pools whose counters are reported, by name
+    private final Map<String, ObjectPool<?>> pools = new LinkedHashMap<>();
+    private long frames;
+    private int createdThisFrame;
+    private int removedThisFrame;
+    private int createdLastFrame;
+    private int removedLastFrame;
+    private int visibleObjects;
+    private int loadedObjects;
+    private long candidatePairs;
+    private long narrowChecks;
+    private int pendingColumns;
+    private int pendingRemovals;
+    private long columnsBuilt;
+    private int columnsBuiltLastFrame;
+
+    /**
+     * Starts measuring a phase.
+     * @return the start time, to pass to end.
+     */
+    public long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends measuring a phase of the current frame. A phase may be measured several times per frame.
+     * @param phase the phase.
+     * @param start the value begin returned.
+     */
+    public void end(Phase phase, long start) {
+        long cost = System.nanoTime() - start;
+        currentCosts[phase.ordinal()] += cost;
+        //only create the event while a recording wants it, frames must not allocate otherwise
+        if (PHASE_EVENT_TYPE.isEnabled()) {
+            PhaseEvent event = new PhaseEvent();
+            event.phase = phase.name();
+            event.frame = frames;
+            event.cost = cost;
+            event.commit();
+        }
+    }
+
+    /**
+     * Ends the current frame and records its costs and counters.
+     * @param start the value begin returned at the beginning of the frame.
+     */
+    public void endFrame(long start) {
+        end(Phase.FRAME, start);
+        int slot = (int) (frames % WINDOW);
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            costs[phase][slot] = currentCosts[phase];
+            currentCosts[phase] = 0;
+        }
+        createdLastFrame = createdThisFrame;
+        removedLastFrame = removedThisFrame;
+        createdThisFrame = 0;
+        removedThisFrame = 0;
+        frames++;
+    }
+
+    /**
+     * Records that a game object was added to the game.
+     * @param layer the object's layer.
+     */
+    public void objectAdded(int layer) {
+        liveObjects.merge(layer, 1, Integer::sum);
+        createdThisFrame++;
+    }
+
+    /**
+     * Records that a game object was removed from the game.
+     * @param layer the object's layer.
+     */
+    public void objectRemoved(int layer) {
+        liveObjects.merge(layer, -1, Integer::sum);
+        removedThisFrame++;
+    }
+
+    /**
+     * Records how many of the loaded objects the camera sees in the current frame.
+     * @param visible number of objects in view.
+     * @param loaded number of loaded objects.
+     */
+    public void setVisibility(int visible, int loaded) {
+        visibleObjects = visible;
+        loadedObjects = loaded;
+    }
+
+    /**
+     * Records the collision work of the current frame.
+     * @param candidates number of object pairs from layers that collide.
+     * @param checks number of pairs the engine actually tested.
+     */
+    public void setCollisionPairs(long candidates, long checks) {
+        candidatePairs = candidates;
+        narrowChecks = checks;
+    }
+
+    /**
+     * Records the state of the chunk jobs after the current frame's share of them.
+     * @param pending number of chunk columns left to create.
+     * @param removals number of objects of unloaded chunks left to remove.
+     * @param built number of chunk columns created so far, in total.
+     */
+    public void setChunkJobs(int pending, int removals, long built) {
+        pendingColumns = pending;
+        pendingRemovals = removals;
+        columnsBuiltLastFrame = (int) (built - columnsBuilt);
+        columnsBuilt = built;
+    }
+
+    /**
+     * Reports the counters of an object pool from now on. The counters are read when reported,
+     * so this costs nothing per frame.
+     * @param name the pool's name in the reports.
+     * @param pool the pool.
+     */
+    public void addPool(String name, ObjectPool<?> pool) {
+        pools.put(name, pool);
+    }
+
+    /**
+     * @return the reported object pools, by name.
+     */
+    public Map<String, ObjectPool<?>> pools() {
+        return pools;
+    }
+
+    /**
+     * @return number of chunk columns left to create after the latest frame.
+     */
+    public int pendingColumns() {
+        return pendingColumns;
+    }
+
+    /**
+     * @return number of objects of unloaded chunks left to remove after the latest frame.
+     */
+    public int pendingRemovals() {
+        return pendingRemovals;
+    }
+
+    /**
+     * @return number of chunk columns created in the latest frame.
+     */
+    public int columnsBuiltLastFrame() {
+        return columnsBuiltLastFrame;
+    }
+
+    /**
+     * @return number of object pairs from colliding layers in the latest frame.
+     */
+    public long candidatePairs() {
+        return candidatePairs;
+    }
+
+    /**
+     * @return number of object pairs the engine tested in the latest frame.
+     */
+    public long narrowChecks() {
+        return narrowChecks;
+    }
+
+    /**
+     * @return number of objects in view in the latest frame.
+     */
+    public int visibleObjects() {
+        return visibleObjects;
+    }
+
+    /**
+     * @return number of loaded objects in the latest frame.
+     */
+    public int loadedObjects() {
+        return loadedObjects;
+    }
+
+    /**
+     * @return number of frames recorded.
+     */
+    public long frames() {
+        return frames;
+    }
+
+    /**
+     * @return number of live objects per layer.
+     */
+    public Map<Integer, Integer> liveObjects() {
+        return liveObjects;
+    }
+
+    /**
+     * @return number of objects created in the last recorded frame.
+     */
+    public int createdLastFrame() {
+        return createdLastFrame;
+    }
+
+    /**
+     * @return number of objects removed in the last recorded frame.
+     */
+    public int removedLastFrame() {
+        return removedLastFrame;
+    }
+
+    /**
+     * @param phase the phase.
+     * @return cost of the phase in the last recorded frame, in milliseconds.
+     */
+    public double lastMillis(Phase phase) {
+        if (frames == 0) {
+            return 0;
+        }
+        return costs[phase.ordinal()][(int) ((frames - 1) % WINDOW)] / NANOS_IN_MILLI;
+    }
+
+    /**
+     * Gets a percentile of a phase's cost over the recent frames.
+     * @param phase the phase.
+     * @param percentile the percentile, in the range [0, 100].
+     * @return the cost, in milliseconds.
+     */
+    public double percentileMillis(Phase phase, double percentile) {
+        int count = (int) Math.min(frames, WINDOW);
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(costs[phase.ordinal()], count);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+        return sorted[Math.max(0, index)] / NANOS_IN_MILLI;
+    }
+
+    /**
+     * @return a short multi-line summary, as shown by the overlay.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : PHASES) {
+            summary.append(String.format("%s p50 %.2f p99 %.2f ms%n", phase,
+                    percentileMillis(phase, 50), percentileMillis(phase, 99)));
+        }
+        summary.append(String.format("objects %s +%d -%d, visible %d of %d, collision pairs %d checked %d%n",
+                liveObjects, createdLastFrame, removedLastFrame, visibleObjects, loadedObjects, candidatePairs,
+                narrowChecks));
+        summary.append(String.format("chunk columns built %d (+%d), pending %d, removals pending %d", columnsBuilt,
+                columnsBuiltLastFrame, pendingColumns, pendingRemovals));
+        for (Map.Entry<String, ObjectPool<?>> entry : pools.entrySet()) {
+            ObjectPool<?> pool = entry.getValue();
+            summary.append(String.format("%n%s pool: %d free of %d, hits %d misses %d dropped %d, hit rate %.1f%%",
+                    entry.getKey(), pool.size(), pool.capacity(), pool.hits(), pool.misses(), pool.dropped(),
+                    pool.hitRate() * 100));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the costs of the recent frames as CSV, one row per frame and one column per phase.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeCsv(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            StringBuilder header = new StringBuilder("frame");
+            for (Phase phase : PHASES) {
+                header.append(',').append(phase.name().toLowerCase()).append("_ms");
+            }
+            writer.println(header);
+            long first = Math.max(0, frames - WINDOW);
+            for (long frame = first; frame < frames; frame++) {
+                StringBuilder row = new StringBuilder(Long.toString(frame));
+                for (Phase phase : PHASES) {
+                    row.append(',').append(costs[phase.ordinal()][(int) (frame % WINDOW)] / NANOS_IN_MILLI);
+                }
+                writer.println(row);
+            }
+        }
+    }
+
+    /**
+     * Writes a JSON summary: percentiles of every phase and the object counters.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeJson(Path path) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"frames\": ").append(frames).append(",\n  \"phases\": {");
+        for (Phase phase : PHASES) {
+            json.append(phase.ordinal() == 0 ? "\n" : ",\n").append(String.format(
+                    "    \"%s\": {\"p50\": %.4f, \"p90\": %.4f, \"p99\": %.4f, \"max\": %.4f}",
+                    phase.name().toLowerCase(), percentileMillis(phase, 50), percentileMillis(phase, 90),
+                    percentileMillis(phase, 99), percentileMillis(phase, 100)));
+        }
+        json.append("\n  },\n  \"liveObjects\": {");
+        String separator = "\n";
+        for (Map.Entry<Integer, Integer> entry : liveObjects.entrySet()) {
+            json.append(separator).append(String.format("    \"%d\": %d", entry.getKey(), entry.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"createdLastFrame\": ").append(createdLastFrame)
+                .append(",\n  \"removedLastFrame\": ").append(removedLastFrame)
+                .append(",\n  \"visibleObjects\": ").append(visibleObjects)
+                .append(",\n  \"loadedObjects\": ").append(loadedObjects)
+                .append(",\n  \"candidatePairs\": ").append(candidatePairs)
+                .append(",\n  \"narrowChecks\": ").append(narrowChecks)
+                .append(",\n  \"columnsBuilt\": ").append(columnsBuilt)
+                .append(",\n  \"pendingColumns\": ").append(pendingColumns)
+                .append(",\n  \"pendingRemovals\": ").append(pendingRemovals)
+                .append(",\n  \"pools\": {");
+        separator = "\n";
+        for (Map.Entry<String, ObjectPool<?>> entry : pools.entrySet()) {
+            ObjectPool<?> pool = entry.getValue();
+            json.append(separator).append(String.format(
+                    "    \"%s\": {\"free\": %d, \"capacity\": %d, \"hits\": %d, \"misses\": %d, \"dropped\": %d, "
+                            + "\"hitRate\": %.4f}", entry.getKey(), pool.size(), pool.capacity(), pool.hits(),
+                    pool.misses(), pool.dropped(), pool.hitRate()));
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        Files.writeString(path, json);
+    }
+}
@@ -0,0 +1,22 @@
+package pepse.util;
+
+/**
+ * Tells which keys are pressed. The game reads the keyboard through it, so the input can come from
+ * the window, from a script or from a recording.
+ */
+@FunctionalInterface
+public interface InputSource {
+    /**
+     * Checks whether a key is pressed in the current frame.
+     * @param keyCode the key, as in java.awt.event.KeyEvent.
+     * @return true if the key is pressed.
+     */
+    boolean isKeyPressed(int keyCode);
+
+    /**
+     * Called once at the beginning of every frame, before any key is read.
+     * @param deltaTime seconds the frame advances the game by.
+     */
+    default void advance(float deltaTime) {
+    }
+}
@@ -0,0 +1,93 @@
+package pepse.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps objects that are no longer used so they can be handed out again instead of allocated.
+ * Counts how often a request was served from the pool, to help tune its capacity.
+ * @param <T> type of the pooled objects.
+ */
+public class ObjectPool<T> {
+    private final ArrayDeque<T> freeObjects = new ArrayDeque<>();
+    private final int capacity;
+    private long hits;
+    private long misses;
+    private long dropped;
+
+    /**
+     * Constructor for ObjectPool.
+     * @param capacity maximal number of free objects kept, released objects beyond it are dropped.
+     */
+    public ObjectPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a free object out of the pool.
+     * @return a free object, or null if the pool is empty (the caller then allocates one).
+     */
+    public T obtain() {
+        T object = freeObjects.pollLast();
+        if (object == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return object;
+    }
+
+    /**
+     * Returns an object that is no longer used to the pool.
+     * @param object the object, it must not be used by the caller anymore.
+     */
+    public void release(T object) {
+        if (freeObjects.size() < capacity) {
+            freeObjects.addLast(object);
+        } else {
+            dropped++;
+        }
+    }
+
+    /**
+     * @return number of free objects in the pool.
+     */
+    public int size() {
+        return freeObjects.size();
+    }
+
+    /**
+     * @return maximal number of free objects kept.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of requests served from the pool.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests the pool could not serve.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return number of released objects dropped because the pool was full.
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return fraction of requests served from the pool, 0 if there were none.
+     */
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,86 @@
+package pepse.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an update over a range of independent slots (leaves, particles...) on a fork-join pool.
+ * The range is split in halves until the pieces are small enough, and the caller waits until
+ * every piece is done, so everything the pieces wrote is visible to it afterwards.
+ * Small ranges run serially on the calling thread, where splitting would cost more than it saves.
+ */
+public class ParallelUpdate {
+    /**
+     * Updates a range of slots. Different ranges may run at the same time,
+     * so it must only touch the state of the slots in its own range.
+     */
+    @FunctionalInterface
+    public interface RangeBody {
+        /**
+         * @param from first slot of the range.
+         * @param to first slot after the range.
+         */
+        void update(int from, int to);
+    }
+
+    //pieces per thread, so threads that finish early can steal some work
+    private static final int PIECES_PER_THREAD = 4;
+    //slots below which a piece is not split further, handing it to another thread would cost more
+    private static final int MIN_PIECE_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final int serialThreshold;
+
+    /**
+     * Constructor for ParallelUpdate.
+     * @param pool the pool the pieces run on, or null to always run serially.
+     * @param serialThreshold ranges with fewer slots than this run serially on the calling thread.
+     */
+    public ParallelUpdate(ForkJoinPool pool, int serialThreshold) {
+        this.pool = pool;
+        this.serialThreshold = serialThreshold;
+    }
+
+    /**
+     * Updates the slots [0, count) and returns when all of them are done.
+     * @param count number of slots.
+     * @param body updates a range of slots.
+     */
+    public void run(int count, RangeBody body) {
+        if (pool == null || count < serialThreshold || pool.getParallelism() < 2) {
+            body.update(0, count);
+            return;
+        }
+        int pieceSize = Math.max(MIN_PIECE_SIZE, count / (pool.getParallelism() * PIECES_PER_THREAD));
+        pool.invoke(new RangeTask(body, 0, count, pieceSize));
+    }
+
+    /**
+     * A range of slots, split in halves until it is no larger than the piece size.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+        private final int pieceSize;
+
+        private RangeTask(RangeBody body, int from, int to, int pieceSize) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.pieceSize = pieceSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= pieceSize) {
+                body.update(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(body, from, middle, pieceSize), new RangeTask(body, middle, to, pieceSize));
+        }
+    }
+}
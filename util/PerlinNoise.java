@@ -8,14 +8,33 @@ package pepse.util;
  */
 
 public class PerlinNoise {
+        // gradient of each 4 bit hash along x, when y and z are integral (see grad)
+        private static final double[] GRADIENT_1D = { 1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0, 1, 0, -1, 0 };
+
         private double seed;
         private long default_size;
         private int[] p;
         private int[] permutation;
+        private double[] octaveSizes;
+        // set when the seed is integral, then 1D noise never needs the y and z dimensions
+        private boolean has1DPath;
+        private int seedY;
 
         public PerlinNoise(double seed) {
             this.seed = seed;
             init();
+            initOctaves(-1);
+        }
+
+        /**
+         * Creates a noise generator that sums the given number of octaves.
+         * @param seed offsets every coordinate.
+         * @param octaves number of octaves, each half the size of the previous one.
+         */
+        public PerlinNoise(double seed, int octaves) {
+            this.seed = seed;
+            init();
+            initOctaves(octaves);
         }
 
         private void init() {
@@ -50,19 +69,79 @@ public class PerlinNoise {
 
         }
 
-        public double noise(double x) {
-            double value = 0.0;
+        /**
+         * Precomputes the size of every octave.
+         * @param octaves number of octaves, or a negative value for every octave not smaller than 1.
+         */
+        private void initOctaves(int octaves) {
+            if (octaves < 0) {
+                octaves = 0;
+                for (double size = default_size; size >= 1; size /= 2.0) {
+                    octaves++;
+                }
+            }
+            this.octaveSizes = new double[octaves];
             double size = default_size;
-            double initialSize = size;
-
-            while (size >= 1) {
-                value += smoothNoise((x / size), (0f / size), (0f / size)) * size;
+            for (int i = 0; i < octaves; i++) {
+                octaveSizes[i] = size;
                 size /= 2.0;
             }
+            this.has1DPath = seed == Math.floor(seed);
+            this.seedY = (int) Math.floor(seed) & 255;
+        }
+
+        public double noise(double x) {
+            double value = 0.0;
+            double initialSize = default_size;
+
+            if (has1DPath) {
+                for (double size : octaveSizes) {
+                    value += smoothNoise1D(x / size) * size;
+                }
+            } else {
+                for (double size : octaveSizes) {
+                    value += smoothNoise((x / size), (0f / size), (0f / size)) * size;
+                }
+            }
 
             return value / initialSize;
         }
 
+        /**
+         * Sums the octaves of the noise over a plane, for 2D terrain such as caves.
+         * @param x first coordinate.
+         * @param y second coordinate.
+         * @return the noise value.
+         */
+        public double noise(double x, double y) {
+            double value = 0.0;
+            for (double size : octaveSizes) {
+                value += smoothNoise(x / size, y / size, 0) * size;
+            }
+            return value / default_size;
+        }
+
+        /**
+         * Same as smoothNoise(x, 0, 0) for an integral seed, without the y and z work.
+         * With y and z integral their fade curves are 0, so only the two corners
+         * on the x axis contribute.
+         */
+        private double smoothNoise1D(double x) {
+            x += this.seed;
+            x += this.seed;
+
+            double floorX = Math.floor(x);
+            int X = (int) floorX & 255;
+            x -= floorX;
+
+            double u = fade(x);
+
+            int AA = p[p[X] + seedY];
+            int BA = p[p[X + 1] + seedY];
+
+            return lerp(u, GRADIENT_1D[p[AA] & 15] * x, GRADIENT_1D[p[BA] & 15] * (x - 1));
+        }
+
         public double smoothNoise(double x, double y, double z) {
             // Offset each coordinate by the seed value
             x += this.seed;
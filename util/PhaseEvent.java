@@ -0,0 +1,26 @@
+package pepse.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event reporting the cost of one phase of one frame.
+ */
+@Name("pepse.FramePhase")
+@Label("Frame Phase")
+@Category("Pepse")
+@Description("Time spent in one phase of a frame")
+public class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    public String phase;
+
+    @Label("Frame")
+    public long frame;
+
+    @Label("Cost")
+    @Timespan(Timespan.NANOSECONDS)
+    public long cost;
+}
@@ -0,0 +1,60 @@
+package pepse.util;
+
+/**
+ * Provides stateless pseudo-random values derived from a seed and a position.
+ * The same arguments always produce the same value, no matter in which order
+ * (or on which thread) the world is generated.
+ */
+public final class PositionHash {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private PositionHash() {
+    }
+
+    /**
+     * Mixes a seed, a position and a salt into a well distributed 64 bit hash.
+     * @param seed the world seed.
+     * @param position a position, usually a block column.
+     * @param salt distinguishes independent values drawn for the same position.
+     * @return the hash.
+     */
+    public static long hash(long seed, long position, long salt) {
+        long value = mix(seed + GOLDEN_GAMMA);
+        value = mix(value ^ (position * GOLDEN_GAMMA));
+        return mix(value ^ (salt * GOLDEN_GAMMA + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Returns a value in the range [0, bound) for the given seed, position and salt.
+     * @param seed the world seed.
+     * @param position a position, usually a block column.
+     * @param salt distinguishes independent values drawn for the same position.
+     * @param bound the upper bound (exclusive), must be positive.
+     * @return a value in the range [0, bound).
+     */
+    public static int nextInt(long seed, long position, long salt, int bound) {
+        return (int) (((hash(seed, position, salt) >>> 33) * bound) >>> 31);
+    }
+
+    /**
+     * Returns a value in the range [0, 1) for the given seed, position and salt.
+     * @param seed the world seed.
+     * @param position a position, usually a block column.
+     * @param salt distinguishes independent values drawn for the same position.
+     * @return a value in the range [0, 1).
+     */
+    public static float nextFloat(long seed, long position, long salt) {
+        return (hash(seed, position, salt) >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     * @param value value to mix.
+     * @return mixed value.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,62 @@
+package pepse.util;
+
+import danogl.gui.rendering.Renderable;
+import danogl.util.Vector2;
+
+import java.awt.*;
+
+/**
+ * Draws a grid of tiles, one renderable per column repeated over a number of rows.
+ * Lets a single game object look like a stack of blocks.
+ * Rendering allocates nothing: each tile is drawn at the origin of the graphics, translated to the tile,
+ * and the tile dimensions are only recomputed when the grid's dimensions change.
+ */
+public class TiledRenderable implements Renderable {
+    private final Renderable[] columnTiles;
+    private final int rows;
+    //dimensions of the grid the tile dimensions were computed for
+    private float gridWidth = Float.NaN;
+    private float gridHeight = Float.NaN;
+    private Vector2 tileDimensions;
+
+    /**
+     * Constructor for TiledRenderable.
+     * @param columnTiles the renderable of each column, from left to right.
+     * @param rows number of times each column's renderable is repeated downwards.
+     */
+    public TiledRenderable(Renderable[] columnTiles, int rows) {
+        this.columnTiles = columnTiles;
+        this.rows = rows;
+    }
+
+    /**
+     * Renders every tile of the grid inside the given rectangle.
+     * @param g the graphics to render with.
+     * @param topLeftCorner top left corner of the whole grid.
+     * @param dimensions dimensions of the whole grid.
+     * @param degreesCounterClockwise rotation of each tile.
+     * @param isFlippedHorizontally whether the tiles are flipped horizontally.
+     * @param isFlippedVertically whether the tiles are flipped vertically.
+     * @param opaqueness opaqueness of the tiles.
+     */
+    @Override
+    public void render(Graphics2D g, Vector2 topLeftCorner, Vector2 dimensions,
+                       double degreesCounterClockwise, boolean isFlippedHorizontally,
+                       boolean isFlippedVertically, double opaqueness) {
+        if (dimensions.x() != gridWidth || dimensions.y() != gridHeight) {
+            gridWidth = dimensions.x();
+            gridHeight = dimensions.y();
+            tileDimensions = new Vector2(gridWidth / columnTiles.length, gridHeight / rows);
+        }
+        for (int column = 0; column < columnTiles.length; column++) {
+            for (int row = 0; row < rows; row++) {
+                double tileX = topLeftCorner.x() + column * tileDimensions.x();
+                double tileY = topLeftCorner.y() + row * tileDimensions.y();
+                g.translate(tileX, tileY);
+                columnTiles[column].render(g, Vector2.ZERO, tileDimensions, degreesCounterClockwise,
+                        isFlippedHorizontally, isFlippedVertically, opaqueness);
+                g.translate(-tileX, -tileY);
+            }
+        }
+    }
+}
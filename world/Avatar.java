@@ -3,24 +3,36 @@ package pepse.world;
 import danogl.GameObject;
 import danogl.collisions.Collision;
 import danogl.collisions.GameObjectCollection;
-import danogl.components.ScheduledTask;
-import danogl.gui.UserInputListener;
 import danogl.gui.rendering.AnimationRenderable;
 import danogl.gui.rendering.Renderable;
 import danogl.util.Vector2;
 import danogl.gui.*;
+import pepse.util.InputSource;
+
 import java.awt.event.KeyEvent;
 
 /**
  * Represents the avatar of the game that is controlled by the user.
- * It extends GameObject.
+ * It extends GameObject. A small state machine decides what the avatar does in each frame,
+ * and switches its animation only when the state changes.
  */
 public class Avatar extends GameObject {
+    /**
+     * What the avatar is doing.
+     */
+    private enum State {
+        STANDING,
+        RUNNING,
+        JUMPING,
+        FLYING
+    }
 
     private static final float VELOCITY_X = 200;
     private static final float VELOCITY_Y = -300;
     private static final float ACCELERATION_Y = 300;
     public static final float AVATAR_SIZE = 100;
+    //seconds after the last flying frame until the avatar's intersections are reset
+    private static final float FLIGHT_RESET_TIME = 0.5f;
 
     private static Renderable standRender;
     private static ImageReader imageReader;
@@ -41,7 +53,14 @@ public class Avatar extends GameObject {
     private static AnimationRenderable flyAnimation;
     private static AnimationRenderable jumpAnimation;
 
-    private static UserInputListener inputListener;
+    private static InputSource inputListener;
+
+    private State state = State.STANDING;
+    private float flightTimer;
+    private TileMap tileMap;
+    private GroundContact groundContact;
+    //whether the ground contact held the avatar up in the previous frame
+    private boolean onGround;
 
     /**
      * Constructor for Avatar.
@@ -61,27 +80,30 @@ public class Avatar extends GameObject {
      * @param gameObjects all game objects in the game.
      * @param layer the layer of this game object in the game.
      * @param topLeftCorner the position in the window the top left corner of the object will be placed.
-     * @param inputListener a listener capable of reading user keyboard inputs.
-     * @param imageReader an object used to read images from the disc and render them.
+     * @param inputListener tells which keys the user presses.
+     * @param imageReader an object used to read images from the disc and render them,
+     *                    or null to create an avatar without images (e.g. when running headless).
      * @return Avatar object.
      */
     public static Avatar create(GameObjectCollection gameObjects,
                                 int layer,
                                 Vector2 topLeftCorner,
-                                UserInputListener inputListener,
+                                InputSource inputListener,
                                 ImageReader imageReader) {
 
         Avatar.inputListener = inputListener;
         Avatar.imageReader = imageReader;
 
         //set renderables of all positions of the avatar
-        standRender = imageReader.readImage(STAND_PATH, true);
-        setRenderables(runRenderables, RUN_PATH);
-        runAnimation =  new AnimationRenderable(runRenderables, 0.2);
-        setRenderables(jumpRenderables, JUMP_PATH);
-        jumpAnimation =  new AnimationRenderable(jumpRenderables, 0.2);
-        setRenderables(flyRenderables, FLY_PATH);
-        flyAnimation =  new AnimationRenderable(flyRenderables, 0.2);
+        if (imageReader != null) {
+            standRender = imageReader.readImage(STAND_PATH, true);
+            setRenderables(runRenderables, RUN_PATH);
+            runAnimation =  new AnimationRenderable(runRenderables, 0.2);
+            setRenderables(jumpRenderables, JUMP_PATH);
+            jumpAnimation =  new AnimationRenderable(jumpRenderables, 0.2);
+            setRenderables(flyRenderables, FLY_PATH);
+            flyAnimation =  new AnimationRenderable(flyRenderables, 0.2);
+        }
 
         Avatar avatar = new Avatar(topLeftCorner, new Vector2(AVATAR_SIZE, AVATAR_SIZE), standRender);
         gameObjects.addGameObject(avatar, layer);
@@ -101,46 +123,103 @@ public class Avatar extends GameObject {
         }
     }
 
+    /**
+     * Makes the avatar collide with the tiles of a tile map, swept every frame,
+     * in addition to the engine's collisions with blocks.
+     * @param tileMap the tile map, or null to collide with blocks only.
+     */
+    public void setTileMap(TileMap tileMap) {
+        this.tileMap = tileMap;
+    }
+
+    /**
+     * Keeps the avatar on the ground by the ground height under it, checked every frame,
+     * for when it does not collide with ground blocks.
+     * @param groundContact the ground contact, or null to collide with blocks only.
+     */
+    public void setGroundContact(GroundContact groundContact) {
+        this.groundContact = groundContact;
+    }
+
     /**
      * This method is overwritten from GameObject.
      * It moves the avatar according to the user input.
      * The avatar can move left or right, jump and fly.
-     * @param deltaTime unused.
+     * @param deltaTime seconds since the previous frame.
      */
     @Override
     public void update(float deltaTime) {
+        float previousX = getTopLeftCorner().x();
+        float previousY = getTopLeftCorner().y();
         super.update(deltaTime);
-        float velocityX = 0;
+        if (tileMap != null) {
+            tileMap.sweep(this, previousX, previousY);
+        }
+        if (groundContact != null) {
+            boolean touching = groundContact.clamp(this);
+            if (touching && !onGround) {
+                land();
+            }
+            onGround = touching;
+        }
+        if (flightTimer > 0) {
+            flightTimer -= deltaTime;
+            if (flightTimer <= 0) {
+                physics().preventIntersectionsFromDirection(Vector2.ZERO);
+            }
+        }
         //move left
         if (inputListener.isKeyPressed(KeyEvent.VK_LEFT)) {
-            renderer().setRenderable(runAnimation);
+            setState(State.RUNNING);
             renderer().setIsFlippedHorizontally(true);
-            velocityX -= VELOCITY_X;
-            transform().setVelocityX(velocityX);
+            transform().setVelocityX(-VELOCITY_X);
         }
         //move right
         else if (inputListener.isKeyPressed(KeyEvent.VK_RIGHT)) {
-            velocityX += VELOCITY_X;
-            renderer().setRenderable(runAnimation);
+            setState(State.RUNNING);
             renderer().setIsFlippedHorizontally(false);
-            transform().setVelocityX(velocityX);
+            transform().setVelocityX(VELOCITY_X);
         }
         //jump
         else if (inputListener.isKeyPressed(KeyEvent.VK_SPACE) && getVelocity().y() == 0){
             transform().setVelocityY(VELOCITY_Y);
-            renderer().setRenderable(jumpAnimation);
+            setState(State.JUMPING);
         }
         //fly
         else if (inputListener.isKeyPressed(KeyEvent.VK_SPACE) && inputListener.isKeyPressed(KeyEvent.VK_SHIFT)){
             transform().setVelocityY(0.5f * VELOCITY_Y);
-            new ScheduledTask(this, 0.5f, false,
-                    () -> physics().preventIntersectionsFromDirection(Vector2.ZERO));
-            renderer().setRenderable(flyAnimation);
+            flightTimer = FLIGHT_RESET_TIME;
+            setState(State.FLYING);
         }
         //stand in place
         else{
             transform().setVelocityX(0);
-            renderer().setRenderable(standRender);
+            setState(State.STANDING);
+        }
+    }
+
+    /**
+     * Switches the avatar to a state, and to the state's animation if it changed.
+     * @param newState the state.
+     */
+    private void setState(State newState) {
+        if (newState == state) {
+            return;
+        }
+        state = newState;
+        switch (newState) {
+            case RUNNING:
+                renderer().setRenderable(runAnimation);
+                break;
+            case JUMPING:
+                renderer().setRenderable(jumpAnimation);
+                break;
+            case FLYING:
+                renderer().setRenderable(flyAnimation);
+                break;
+            default:
+                renderer().setRenderable(standRender);
+                break;
         }
     }
 
@@ -153,7 +232,14 @@ public class Avatar extends GameObject {
     public void onCollisionEnter(GameObject other, Collision collision) {
         super.onCollisionEnter(other, collision);
         if (other instanceof Block){
-            transform().setVelocityY(0);
+            land();
         }
     }
+
+    /**
+     * Called when the avatar lands on the ground, it stops falling.
+     */
+    private void land() {
+        transform().setVelocityY(0);
+    }
 }
\ No newline at end of file
@@ -5,13 +5,19 @@ import danogl.components.GameObjectPhysics;
 import danogl.gui.rendering.Renderable;
 import danogl.util.Vector2;
 
+import java.awt.*;
+
 /**
  * Represents the bricks that make up the ground of the game.
- * It extends GameObject.
+ * It extends GameObject. Blocks never move, so a block the camera cannot see is neither
+ * updated nor rendered.
  */
-public class Block extends GameObject {
+public class Block extends GameObject implements Cullable {
     public static final int SIZE = 30;
 
+    private long visibleFrame;
+    private FrustumCuller culler;
+
     /**
      * Constructor for Block.
      * It extends the super's GameObject constructor, and also saves the strategy given.
@@ -19,7 +25,17 @@ public class Block extends GameObject {
      * @param renderable the image object to display on the screen.
      */
     public Block(Vector2 topLeftCorner, Renderable renderable) {
-        super(topLeftCorner, Vector2.ONES.mult(SIZE), renderable);
+        this(topLeftCorner, Vector2.ONES.mult(SIZE), renderable);
+    }
+
+    /**
+     * Constructor for a block that spans several cells, such as a merged ground column.
+     * @param topLeftCorner the position in the window the top left corner of the object will be placed.
+     * @param dimensions the 2d dimensions of the block, usually multiples of SIZE.
+     * @param renderable the image object to display on the screen.
+     */
+    public Block(Vector2 topLeftCorner, Vector2 dimensions, Renderable renderable) {
+        super(topLeftCorner, dimensions, renderable);
 
         //ensures that no object passes through the block
         physics().preventIntersectionsFromDirection(Vector2.ZERO);
@@ -27,4 +43,60 @@ public class Block extends GameObject {
         //makes sure the block doesn't moves if gets collided
         physics().setMass(GameObjectPhysics.IMMOVABLE_MASS);
     }
+
+    /**
+     * Prepares a pooled block to be used again, as if it was just constructed.
+     * @param topLeftCorner the position in the window the top left corner of the object will be placed.
+     * @param dimensions the 2d dimensions of the block.
+     * @param renderable the image object to display on the screen.
+     */
+    public void reset(Vector2 topLeftCorner, Vector2 dimensions, Renderable renderable) {
+        setDimensions(dimensions);
+        setTopLeftCorner(topLeftCorner);
+        renderer().setRenderable(renderable);
+        transform().setVelocity(Vector2.ZERO);
+    }
+
+    @Override
+    public void cullWith(FrustumCuller culler) {
+        this.culler = culler;
+    }
+
+    @Override
+    public void markVisible(long frame) {
+        visibleFrame = frame;
+    }
+
+    /**
+     * Updates the block, only while the camera sees it.
+     * @param deltaTime seconds since the previous frame.
+     */
+    @Override
+    public void update(float deltaTime) {
+        if (culler == null || culler.isVisible(visibleFrame)) {
+            super.update(deltaTime);
+        }
+    }
+
+    /**
+     * Counts the check, blocks collide with whatever the layers allow.
+     * @param other the other GameObject.
+     * @return whether the block collides with it.
+     */
+    @Override
+    public boolean shouldCollideWith(GameObject other) {
+        WorldLayers.countCheck();
+        return super.shouldCollideWith(other);
+    }
+
+    /**
+     * Renders the block, only while the camera sees it.
+     * @param g the graphics to render with.
+     */
+    @Override
+    public void render(Graphics2D g) {
+        if (culler == null || culler.isVisible(visibleFrame)) {
+            super.render(g);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package pepse.world;
+
+import danogl.GameObject;
+import danogl.collisions.GameObjectCollection;
+import pepse.util.FrameStats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Represents a vertical strip of the world, a fixed number of block columns wide.
+ * The chunk keeps track of every game object created for it, so it can be unloaded
+ * without scanning the rest of the world, and indexes them by position.
+ */
+public class Chunk {
+    public static final int COLUMNS = 16;
+    public static final int WIDTH = COLUMNS * Block.SIZE;
+    //objects removed between two looks at the clock while unloading under a deadline
+    private static final int REMOVALS_PER_CLOCK_CHECK = 16;
+    //objects dropped from the spatial index stay in the game until the removal loop reaches them
+    private static final ObjIntConsumer<GameObject> KEEP_IN_GAME = (gameObject, layer) -> { };
+
+    private final int index;
+    private final ChunkData data;
+    private final GameObjectCollection gameObjects;
+    private final FrameStats stats;
+    private final SpatialIndex spatialIndex;
+    private final Map<Integer, List<GameObject>> objectsByLayer = new HashMap<>();
+    private final List<Runnable> unloadActions = new ArrayList<>();
+    private int objectCount;
+    private boolean unloading;
+
+    /**
+     * Constructor for Chunk.
+     * @param data the prepared data of the chunk, its index decides where the chunk is.
+     * @param gameObjects all game objects in the game.
+     * @param stats counts the objects the chunk adds and removes.
+     * @param spatialIndex indexes the chunk's objects while they are in the game.
+     */
+    public Chunk(ChunkData data, GameObjectCollection gameObjects, FrameStats stats,
+                 SpatialIndex spatialIndex) {
+        this.index = data.index();
+        this.data = data;
+        this.gameObjects = gameObjects;
+        this.stats = stats;
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * Gets the index of the chunk that contains a given x coordinate.
+     * @param x coordinate.
+     * @return chunk index.
+     */
+    public static int indexOf(float x) {
+        return Math.floorDiv((int) Math.floor(x), WIDTH);
+    }
+
+    /**
+     * @return the index of this chunk.
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * @return the data the chunk's objects are built from.
+     */
+    public ChunkData data() {
+        return data;
+    }
+
+    /**
+     * @return first x value in the chunk.
+     */
+    public int minX() {
+        return index * WIDTH;
+    }
+
+    /**
+     * @return first x value after the chunk.
+     */
+    public int maxX() {
+        return minX() + WIDTH;
+    }
+
+    /**
+     * @return number of game objects this chunk owns.
+     */
+    public int objectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Adds a game object to the game and records that this chunk owns it.
+     * @param gameObject the object to add.
+     * @param layer the layer of the object.
+     */
+    public void addGameObject(GameObject gameObject, int layer) {
+        gameObjects.addGameObject(gameObject, layer);
+        objectsByLayer.computeIfAbsent(layer, key -> new ArrayList<>()).add(gameObject);
+        objectCount++;
+        spatialIndex.add(gameObject, layer);
+        stats.objectAdded(layer);
+    }
+
+    /**
+     * Registers an action that runs when the chunk is unloaded, before its objects are removed.
+     * @param action the action, e.g. detaching the chunk's objects from a system that updates them.
+     */
+    public void onUnload(Runnable action) {
+        unloadActions.add(action);
+    }
+
+    /**
+     * Removes every game object owned by this chunk from the game.
+     * @param recycler receives every removed object, e.g. to return it to a pool.
+     */
+    public void unload(Consumer<GameObject> recycler) {
+        unload(recycler, Long.MAX_VALUE);
+    }
+
+    /**
+     * Removes the game objects owned by this chunk from the game until a deadline passes,
+     * so a chunk can be unloaded over several frames. The first call runs the unload actions and drops
+     * the objects of fixed layers from the spatial index at once, by the chunk's range, so queries stop
+     * finding the chunk even while its objects are still being removed.
+     * At least a few objects are removed per call, whatever the deadline.
+     * @param recycler receives every removed object, e.g. to return it to a pool.
+     * @param deadline System.nanoTime value after which no more objects are removed.
+     * @return true once the chunk owns no objects anymore.
+     */
+    public boolean unload(Consumer<GameObject> recycler, long deadline) {
+        if (!unloading) {
+            unloading = true;
+            for (Runnable action : unloadActions) {
+                action.run();
+            }
+            unloadActions.clear();
+            for (int layer : objectsByLayer.keySet()) {
+                if (WorldLayers.isFixed(layer)) {
+                    spatialIndex.removeInRange(minX(), maxX(), layer, KEEP_IN_GAME);
+                }
+            }
+        }
+        int removed = 0;
+        Iterator<Map.Entry<Integer, List<GameObject>>> layers = objectsByLayer.entrySet().iterator();
+        while (layers.hasNext()) {
+            Map.Entry<Integer, List<GameObject>> entry = layers.next();
+            List<GameObject> layerObjects = entry.getValue();
+            while (!layerObjects.isEmpty()) {
+                GameObject gameObject = layerObjects.remove(layerObjects.size() - 1);
+                gameObjects.removeGameObject(gameObject, entry.getKey());
+                if (!WorldLayers.isFixed(entry.getKey())) {
+                    spatialIndex.remove(gameObject);
+                }
+                stats.objectRemoved(entry.getKey());
+                recycler.accept(gameObject);
+                objectCount--;
+                if (++removed % REMOVALS_PER_CLOCK_CHECK == 0 && System.nanoTime() >= deadline) {
+                    return false;
+                }
+            }
+            layers.remove();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,394 @@
+package pepse.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the data of unloaded chunks, so revisiting them skips the noise and hashing that built them
+ * and the leaves carry on from where they were.
+ * Chunks are stored compressed in a compact binary format: ground heights, colour variants, cave cells,
+ * tree specs and leaf states. Recent chunks are kept in off-heap buffers; once those exceed a size cap
+ * the oldest ones spill to a memory-mapped file. Space of chunks taken back from the file is freed and
+ * reused by later spills, so the file (and its mapping) only grows with the most data spilled at once.
+ * All methods may be called from any thread.
+ */
+public class ChunkCache {
+    private static final int SCRATCH_SIZE = 64 * 1024;
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String SPILL_PREFIX = "pepse-chunks";
+    private static final String SPILL_SUFFIX = ".bin";
+
+    private final long memoryCapacity;
+    //compressed chunks in memory, oldest first
+    private final LinkedHashMap<Integer, ByteBuffer> inMemory = new LinkedHashMap<>();
+    private final Map<Integer, Spilled> spilled = new HashMap<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    //unused extents of each segment, offset to length, never adjacent to each other
+    private final List<TreeMap<Integer, Integer>> freeExtents = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer encoded = ByteBuffer.allocate(SCRATCH_SIZE);
+    //grows when a chunk does not compress to less than its encoding
+    private byte[] compressed = new byte[SCRATCH_SIZE];
+    private FileChannel spillChannel;
+    private long memoryBytes;
+    private long spilledBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Where a spilled chunk is in the spill file.
+     */
+    private static class Spilled {
+        private final int segment;
+        private final int position;
+        private final int length;
+
+        /**
+         * Constructor for Spilled.
+         * @param segment index of the mapped segment.
+         * @param position offset of the chunk in the segment.
+         * @param length compressed length of the chunk.
+         */
+        private Spilled(int segment, int position, int length) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Constructor for ChunkCache.
+     * @param memoryCapacity bytes of compressed chunks kept in memory before spilling to disk.
+     */
+    public ChunkCache(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+    }
+
+    /**
+     * Stores the data of a chunk, replacing any data stored for it before.
+     * @param data the chunk's data, including the state of its leaves.
+     */
+    public synchronized void store(ChunkData data) {
+        remove(data.index());
+        encoded.clear();
+        write(data, encoded);
+        deflater.reset();
+        deflater.setInput(encoded.array(), 0, encoded.position());
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(compressed, 0, length).flip();
+        inMemory.put(data.index(), buffer);
+        memoryBytes += length;
+        if (memoryBytes > memoryCapacity) {
+            spillOldest();
+        }
+    }
+
+    /**
+     * Gets the stored data of a chunk. The chunk stays stored until it is removed.
+     * @param index the chunk index.
+     * @return a fresh copy of the chunk's data (without a baked ground), or null if it is not stored.
+     */
+    public synchronized ChunkData get(int index) {
+        ByteBuffer source;
+        ByteBuffer inMemoryBuffer = inMemory.get(index);
+        if (inMemoryBuffer != null) {
+            source = inMemoryBuffer.duplicate();
+        } else {
+            Spilled entry = spilled.get(index);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            source = segments.get(entry.segment).duplicate();
+            source.position(entry.position).limit(entry.position + entry.length);
+        }
+        hits++;
+        inflater.reset();
+        inflater.setInput(source);
+        try {
+            //an encoding never exceeds the scratch buffer, so a chunk that does not fit is corrupt
+            int decodedLength = inflater.inflate(encoded.array());
+            if (!inflater.finished()) {
+                throw new IllegalStateException("corrupt cached chunk " + index + ": data does not end");
+            }
+            encoded.clear().limit(decodedLength);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt cached chunk " + index, e);
+        }
+        return read(encoded);
+    }
+
+    /**
+     * Forgets the stored data of a chunk, e.g. once it is loaded again.
+     * @param index the chunk index.
+     */
+    public synchronized void remove(int index) {
+        ByteBuffer buffer = inMemory.remove(index);
+        if (buffer != null) {
+            memoryBytes -= buffer.capacity();
+        }
+        Spilled entry = spilled.remove(index);
+        if (entry != null) {
+            free(entry);
+        }
+    }
+
+    /**
+     * @return number of chunks stored in memory.
+     */
+    public synchronized int memoryChunkCount() {
+        return inMemory.size();
+    }
+
+    /**
+     * @return number of chunks stored in the spill file.
+     */
+    public synchronized int spilledChunkCount() {
+        return spilled.size();
+    }
+
+    /**
+     * @return compressed bytes stored in memory.
+     */
+    public synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return bytes of the chunks stored in the spill file.
+     */
+    public synchronized long spilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return size of the spill file, used or free.
+     */
+    public synchronized long spillFileBytes() {
+        return (long) segments.size() * SEGMENT_SIZE;
+    }
+
+    /**
+     * @return number of get calls that found the chunk.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of get calls that did not find the chunk.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Moves the oldest chunks in memory to the spill file until memory is within its cap.
+     */
+    private void spillOldest() {
+        Iterator<Map.Entry<Integer, ByteBuffer>> oldest = inMemory.entrySet().iterator();
+        while (memoryBytes > memoryCapacity && oldest.hasNext()) {
+            Map.Entry<Integer, ByteBuffer> entry = oldest.next();
+            ByteBuffer buffer = entry.getValue();
+            spilled.put(entry.getKey(), spill(buffer.duplicate()));
+            memoryBytes -= buffer.capacity();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Writes a compressed chunk to the first free extent of the spill file large enough for it,
+     * mapping a new segment at the end of the file when there is none.
+     * @param buffer the compressed chunk.
+     * @return where the chunk was written.
+     */
+    private Spilled spill(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        Spilled entry = allocate(length);
+        if (entry == null) {
+            mapSegment();
+            entry = allocate(length);
+        }
+        ByteBuffer target = segments.get(entry.segment).duplicate();
+        target.position(entry.position);
+        target.put(buffer);
+        spilledBytes += length;
+        return entry;
+    }
+
+    /**
+     * Takes space for a chunk from the first free extent large enough for it.
+     * @param length bytes needed.
+     * @return where the chunk goes, or null if no free extent is large enough.
+     */
+    private Spilled allocate(int length) {
+        for (int segment = 0; segment < freeExtents.size(); segment++) {
+            TreeMap<Integer, Integer> free = freeExtents.get(segment);
+            for (Map.Entry<Integer, Integer> extent : free.entrySet()) {
+                if (extent.getValue() < length) {
+                    continue;
+                }
+                int position = extent.getKey();
+                int remaining = extent.getValue() - length;
+                free.remove(position);
+                if (remaining > 0) {
+                    free.put(position + length, remaining);
+                }
+                return new Spilled(segment, position, length);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives the space of a chunk taken back from the spill file to later spills,
+     * merging it with the free extents next to it.
+     * @param entry where the chunk was.
+     */
+    private void free(Spilled entry) {
+        TreeMap<Integer, Integer> free = freeExtents.get(entry.segment);
+        int position = entry.position;
+        int length = entry.length;
+        Map.Entry<Integer, Integer> before = free.floorEntry(position);
+        if (before != null && before.getKey() + before.getValue() == position) {
+            free.remove(before.getKey());
+            position = before.getKey();
+            length += before.getValue();
+        }
+        Integer afterLength = free.remove(entry.position + entry.length);
+        if (afterLength != null) {
+            length += afterLength;
+        }
+        free.put(position, length);
+        spilledBytes -= entry.length;
+    }
+
+    /**
+     * Maps a new segment at the end of the spill file, creating the file first if needed.
+     */
+    private void mapSegment() {
+        try {
+            if (spillChannel == null) {
+                Path path = Files.createTempFile(SPILL_PREFIX, SPILL_SUFFIX);
+                path.toFile().deleteOnExit();
+                spillChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            segments.add(spillChannel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to map the chunk spill file", e);
+        }
+        TreeMap<Integer, Integer> free = new TreeMap<>();
+        free.put(0, SEGMENT_SIZE);
+        freeExtents.add(free);
+    }
+
+    /**
+     * Encodes the data of a chunk.
+     * @param data the chunk's data.
+     * @param out receives the encoding.
+     */
+    private static void write(ChunkData data, ByteBuffer out) {
+        out.putInt(data.index());
+        for (float groundHeight : data.groundHeights()) {
+            out.putFloat(groundHeight);
+        }
+        for (int color : data.groundColors()) {
+            out.put((byte) color);
+        }
+        out.put((byte) (data.solidCells() == null ? 0 : 1));
+        if (data.solidCells() != null) {
+            for (int column = 0; column < Chunk.COLUMNS; column++) {
+                out.putLong(data.solidCells()[column]).putLong(data.exposedCells()[column]);
+            }
+        }
+        out.put((byte) data.treeCount());
+        for (int tree = 0; tree < data.treeCount(); tree++) {
+            out.putInt(data.treeXValue(tree));
+            out.put((byte) data.trunkHeight(tree));
+            out.putFloat(data.treeGroundHeight(tree));
+            out.putLong(data.leafSeed(tree));
+            int[] leafColors = data.leafColors(tree);
+            out.put((byte) leafColors.length);
+            for (int color : leafColors) {
+                out.put((byte) color);
+            }
+            byte[] leafState = data.leafState(tree);
+            out.putShort((short) (leafState == null ? 0 : leafState.length));
+            if (leafState != null) {
+                out.put(leafState);
+            }
+        }
+    }
+
+    /**
+     * Decodes the data of a chunk.
+     * @param in the encoding.
+     * @return the chunk's data.
+     */
+    private static ChunkData read(ByteBuffer in) {
+        ChunkData data = new ChunkData(in.getInt());
+        float[] groundHeights = data.groundHeights();
+        for (int i = 0; i < groundHeights.length; i++) {
+            groundHeights[i] = in.getFloat();
+        }
+        int[] groundColors = data.groundColors();
+        for (int i = 0; i < groundColors.length; i++) {
+            groundColors[i] = in.get();
+        }
+        if (in.get() != 0) {
+            long[] solid = new long[Chunk.COLUMNS];
+            long[] exposed = new long[Chunk.COLUMNS];
+            for (int column = 0; column < Chunk.COLUMNS; column++) {
+                solid[column] = in.getLong();
+                exposed[column] = in.getLong();
+            }
+            data.setCells(solid, exposed);
+        }
+        int treeCount = in.get();
+        for (int tree = 0; tree < treeCount; tree++) {
+            int xValue = in.getInt();
+            int trunkHeight = in.get();
+            float groundHeight = in.getFloat();
+            long leafSeed = in.getLong();
+            int[] leafColors = new int[in.get()];
+            for (int i = 0; i < leafColors.length; i++) {
+                leafColors[i] = in.get();
+            }
+            data.addTree(xValue, trunkHeight, groundHeight, leafSeed, leafColors);
+            int stateLength = Short.toUnsignedInt(in.getShort());
+            if (stateLength > 0) {
+                byte[] leafState = new byte[stateLength];
+                in.get(leafState);
+                data.setLeafState(tree, leafState);
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,212 @@
+package pepse.world;
+
+import danogl.gui.rendering.Renderable;
+
+/**
+ * Everything needed to build the game objects of a chunk: ground heights, colours and tree specs,
+ * and the state its leaves were in when the chunk was last unloaded.
+ * It holds no game objects, so it can be prepared on any thread ahead of time.
+ */
+public class ChunkData {
+    private final int index;
+    private final float[] groundHeights = new float[Chunk.COLUMNS];
+    private final int[] groundColors = new int[Chunk.COLUMNS];
+    //image of the chunk's whole ground, when the terrain is baked
+    private Renderable bakedGround;
+    private float bakedGroundTop;
+    private float bakedGroundHeight;
+    //solid and air-exposed ground cells, one row bit per cell below each column's surface (cave terrain)
+    private long[] solidCells;
+    private long[] exposedCells;
+
+    //tree specs, at most one tree per column
+    private int treeCount;
+    private final int[] treeXValues = new int[Chunk.COLUMNS];
+    private final int[] trunkHeights = new int[Chunk.COLUMNS];
+    private final float[] treeGroundHeights = new float[Chunk.COLUMNS];
+    private final long[] leafSeeds = new long[Chunk.COLUMNS];
+    private final int[][] leafColors = new int[Chunk.COLUMNS][];
+    private final byte[][] leafStates = new byte[Chunk.COLUMNS][];
+
+    /**
+     * Constructor for ChunkData.
+     * @param index the chunk index.
+     */
+    public ChunkData(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the chunk index.
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * @return first x value in the chunk.
+     */
+    public int minX() {
+        return index * Chunk.WIDTH;
+    }
+
+    /**
+     * @return first x value after the chunk.
+     */
+    public int maxX() {
+        return minX() + Chunk.WIDTH;
+    }
+
+    /**
+     * @return ground height (y coordinate) of each column in the chunk.
+     */
+    public float[] groundHeights() {
+        return groundHeights;
+    }
+
+    /**
+     * @return palette variant of each ground column's color.
+     */
+    public int[] groundColors() {
+        return groundColors;
+    }
+
+    /**
+     * Sets the image of the chunk's whole ground.
+     * @param renderable draws the image.
+     * @param top y coordinate of the image's top edge.
+     * @param height height of the image.
+     */
+    public void setBakedGround(Renderable renderable, float top, float height) {
+        this.bakedGround = renderable;
+        this.bakedGroundTop = top;
+        this.bakedGroundHeight = height;
+    }
+
+    /**
+     * @return renderable of the chunk's baked ground, or null if the ground was not baked.
+     */
+    public Renderable bakedGround() {
+        return bakedGround;
+    }
+
+    /**
+     * @return y coordinate of the baked ground's top edge.
+     */
+    public float bakedGroundTop() {
+        return bakedGroundTop;
+    }
+
+    /**
+     * @return height of the baked ground.
+     */
+    public float bakedGroundHeight() {
+        return bakedGroundHeight;
+    }
+
+    /**
+     * Sets the ground cells of a chunk with caves. Bit r of a column's value is the cell r blocks
+     * below the column's surface.
+     * @param solid the solid cells of each column.
+     * @param exposed the solid cells of each column that touch air.
+     */
+    public void setCells(long[] solid, long[] exposed) {
+        this.solidCells = solid;
+        this.exposedCells = exposed;
+    }
+
+    /**
+     * @return solid ground cells of each column, or null if the chunk has no caves.
+     */
+    public long[] solidCells() {
+        return solidCells;
+    }
+
+    /**
+     * @return solid ground cells of each column that touch air, or null if the chunk has no caves.
+     */
+    public long[] exposedCells() {
+        return exposedCells;
+    }
+
+    /**
+     * Adds the spec of a tree planted in this chunk.
+     * @param xValue x coordinate of the trunk.
+     * @param trunkHeight height of the trunk, in blocks.
+     * @param groundHeight y coordinate of the lowest trunk block.
+     * @param leafSeed seed the leaves' timings are derived from.
+     * @param colors palette variant of each leaf's color.
+     */
+    public void addTree(int xValue, int trunkHeight, float groundHeight, long leafSeed, int[] colors) {
+        treeXValues[treeCount] = xValue;
+        trunkHeights[treeCount] = trunkHeight;
+        treeGroundHeights[treeCount] = groundHeight;
+        leafSeeds[treeCount] = leafSeed;
+        leafColors[treeCount] = colors;
+        treeCount++;
+    }
+
+    /**
+     * @return number of trees in the chunk.
+     */
+    public int treeCount() {
+        return treeCount;
+    }
+
+    /**
+     * @param tree index of a tree in the chunk.
+     * @return x coordinate of the tree's trunk.
+     */
+    public int treeXValue(int tree) {
+        return treeXValues[tree];
+    }
+
+    /**
+     * @param tree index of a tree in the chunk.
+     * @return height of the tree's trunk, in blocks.
+     */
+    public int trunkHeight(int tree) {
+        return trunkHeights[tree];
+    }
+
+    /**
+     * @param tree index of a tree in the chunk.
+     * @return y coordinate of the tree's lowest trunk block.
+     */
+    public float treeGroundHeight(int tree) {
+        return treeGroundHeights[tree];
+    }
+
+    /**
+     * @param tree index of a tree in the chunk.
+     * @return seed the tree's leaves derive their timings from.
+     */
+    public long leafSeed(int tree) {
+        return leafSeeds[tree];
+    }
+
+    /**
+     * @param tree index of a tree in the chunk.
+     * @return palette variant of each of the tree's leaves' colors.
+     */
+    public int[] leafColors(int tree) {
+        return leafColors[tree];
+    }
+
+    /**
+     * Sets the saved state of a tree's leaves.
+     * @param tree index of a tree in the chunk.
+     * @param state the state, as saved by the leaf system.
+     */
+    public void setLeafState(int tree, byte[] state) {
+        leafStates[tree] = state;
+    }
+
+    /**
+     * @param tree index of a tree in the chunk.
+     * @return saved state of the tree's leaves, or null if they start a fresh life.
+     */
+    public byte[] leafState(int tree) {
+        return leafStates[tree];
+    }
+}
@@ -0,0 +1,378 @@
+package pepse.world;
+
+import danogl.GameObject;
+import danogl.collisions.GameObjectCollection;
+import pepse.util.FrameStats;
+import pepse.world.trees.Tree;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Loads and unloads chunks of the world around a given x coordinate.
+ * The loaded chunks always form one contiguous range of chunk indices.
+ * Chunk data is prepared ahead of time on worker threads, in the direction the center moves,
+ * so loading a chunk on the game thread only has to create its game objects.
+ * Creating and removing those objects are jobs worked through column by column (and object by object)
+ * under a per-frame time budget, so crossing into a new chunk never costs one long frame. The loaded
+ * range reaches further ahead the faster the center moves, so chunks are built before they are seen.
+ */
+public class ChunkManager {
+    //seconds of movement the prefetching looks ahead
+    private static final float PREDICTION_TIME = 1f;
+    private static final String WORKER_NAME = "chunk-worker";
+    //seconds of movement the loaded range reaches beyond the load distance, ahead of the center
+    private static final float LOOK_AHEAD_TIME = 0.5f;
+    private static final long NANOS_IN_MICRO = 1000;
+
+    private final GameObjectCollection gameObjects;
+    private final Terrain terrain;
+    private final Tree tree;
+    private final WorldPools pools;
+    private final FrameStats stats;
+    private final SpatialIndex spatialIndex;
+    private final float loadDistance;
+    private final float unloadDistance;
+    private final ExecutorService workers;
+    private final Map<Integer, Chunk> loadedChunks = new HashMap<>();
+    private final Map<Integer, Future<ChunkData>> preparedChunks = new HashMap<>();
+    //chunks whose objects are still being created, with the next column to create, in order of loading
+    private final Map<Integer, int[]> buildingColumns = new LinkedHashMap<>();
+    //unloaded chunks whose objects are still being removed, in order of unloading
+    private final Map<Integer, Chunk> unloadingChunks = new LinkedHashMap<>();
+    private final Consumer<GameObject> recycler;
+    private ChunkCache cache;
+    //nanoseconds of object creation and removal per frame, 0 for no limit
+    private long frameBudget;
+    private long columnsBuilt;
+
+    //first and last loaded chunk indices (empty when last < first)
+    private int firstLoaded;
+    private int lastLoaded = -1;
+    //chunk range of the latest prefetch, prefetching again is skipped while it stays the same
+    private int prefetchFirst;
+    private int prefetchLast = -1;
+
+    /**
+     * Constructor for ChunkManager.
+     * @param gameObjects all game objects in the game.
+     * @param terrain creates the ground of each chunk.
+     * @param tree creates the trees of each chunk.
+     * @param pools receives the objects of unloaded chunks.
+     * @param stats receives the cost of creating and removing chunk objects.
+     * @param spatialIndex indexes the objects of loaded chunks.
+     * @param loadDistance chunks closer than this distance to the center are loaded.
+     * @param unloadDistance chunks farther than this distance from the center are unloaded.
+     * @param workerThreads number of threads preparing chunk data, 0 prepares on the game thread.
+     */
+    public ChunkManager(GameObjectCollection gameObjects, Terrain terrain, Tree tree, WorldPools pools,
+                        FrameStats stats, SpatialIndex spatialIndex, float loadDistance, float unloadDistance,
+                        int workerThreads) {
+        this.gameObjects = gameObjects;
+        this.terrain = terrain;
+        this.tree = tree;
+        this.pools = pools;
+        this.stats = stats;
+        this.spatialIndex = spatialIndex;
+        this.loadDistance = loadDistance;
+        this.unloadDistance = unloadDistance;
+        this.recycler = pools::recycle;
+        this.workers = workerThreads > 0 ? Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, WORKER_NAME);
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Loads missing chunks near the given x coordinate, unloads far ones, and starts
+     * preparing the chunks the center is heading to.
+     * @param centerX x coordinate the world is streamed around (usually the avatar's).
+     * @param velocityX horizontal velocity of the center, used to predict the next chunks.
+     */
+    public void update(float centerX, float velocityX) {
+        long deadline = frameBudget > 0 ? System.nanoTime() + frameBudget : Long.MAX_VALUE;
+        float lookAhead = Math.abs(velocityX) * LOOK_AHEAD_TIME;
+        float reachLeft = loadDistance + (velocityX < 0 ? lookAhead : 0);
+        float reachRight = loadDistance + (velocityX > 0 ? lookAhead : 0);
+        //never unload what the look-ahead would load again
+        float keepDistance = Math.max(unloadDistance, loadDistance + lookAhead + Chunk.WIDTH);
+        int first = Chunk.indexOf(centerX - reachLeft);
+        int last = Chunk.indexOf(centerX + reachRight);
+        if (lastLoaded < firstLoaded) {
+            firstLoaded = first;
+            lastLoaded = first - 1;
+        }
+        // go right
+        while (lastLoaded < last) {
+            load(++lastLoaded);
+        }
+        // go left
+        while (firstLoaded > first) {
+            load(--firstLoaded);
+        }
+        // drop chunks that fell behind
+        while (firstLoaded <= lastLoaded && centerX - (firstLoaded + 1) * Chunk.WIDTH > keepDistance) {
+            unload(firstLoaded++);
+        }
+        while (firstLoaded <= lastLoaded && lastLoaded * Chunk.WIDTH - centerX > keepDistance) {
+            unload(lastLoaded--);
+        }
+        runJobs(deadline);
+        if (loadedChunks.size() < terrain.heightMap().cachedChunkCount()) {
+            terrain.heightMap().evictFarFrom(centerX, keepDistance);
+        }
+        if (workers != null) {
+            prefetch(centerX, velocityX);
+        }
+    }
+
+    /**
+     * Sets the cache unloaded chunks are kept in and restored from.
+     * @param cache the chunk cache, or null to rebuild revisited chunks from scratch.
+     */
+    public void setCache(ChunkCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets how long creating and removing chunk objects may take per frame. Whatever does not fit
+     * is carried over to the next frames, though every frame makes some progress.
+     * @param micros the budget in microseconds, 0 to create and remove everything right away.
+     */
+    public void setFrameBudget(long micros) {
+        this.frameBudget = micros * NANOS_IN_MICRO;
+    }
+
+    /**
+     * Creates and removes every pending chunk object now, whatever the budget.
+     */
+    public void finishJobs() {
+        runJobs(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return number of columns of loaded chunks whose objects are not created yet.
+     */
+    public int pendingColumns() {
+        if (buildingColumns.isEmpty()) {
+            return 0;
+        }
+        int columns = 0;
+        for (int[] nextColumn : buildingColumns.values()) {
+            columns += Chunk.COLUMNS - nextColumn[0];
+        }
+        return columns;
+    }
+
+    /**
+     * @return number of objects of unloaded chunks that are not removed yet.
+     */
+    public int pendingRemovals() {
+        if (unloadingChunks.isEmpty()) {
+            return 0;
+        }
+        int objects = 0;
+        for (Chunk chunk : unloadingChunks.values()) {
+            objects += chunk.objectCount();
+        }
+        return objects;
+    }
+
+    /**
+     * @return number of chunk columns whose objects were created since the manager was created.
+     */
+    public long columnsBuilt() {
+        return columnsBuilt;
+    }
+
+    /**
+     * Hashes which chunks are loaded and how many objects each of them owns, so two runs can be checked
+     * to have ended with the same world.
+     * @return the hash.
+     */
+    public long stateHash() {
+        long hash = firstLoaded;
+        hash = hash * 31 + lastLoaded;
+        for (int index = firstLoaded; index <= lastLoaded; index++) {
+            Chunk chunk = loadedChunks.get(index);
+            hash = hash * 31 + (chunk == null ? -1 : chunk.objectCount());
+        }
+        return hash;
+    }
+
+    /**
+     * @return number of loaded chunks.
+     */
+    public int loadedChunkCount() {
+        return loadedChunks.size();
+    }
+
+    /**
+     * @return number of chunks prepared (or being prepared) but not loaded yet.
+     */
+    public int preparedChunkCount() {
+        return preparedChunks.size();
+    }
+
+    /**
+     * Starts preparing the chunks around the predicted position of the center,
+     * and forgets prepared chunks the center moved away from.
+     * @param centerX x coordinate the world is streamed around.
+     * @param velocityX horizontal velocity of the center.
+     */
+    private void prefetch(float centerX, float velocityX) {
+        float predictedX = centerX + velocityX * PREDICTION_TIME;
+        int first = Math.min(firstLoaded - 1, Chunk.indexOf(predictedX - loadDistance));
+        int last = Math.max(lastLoaded + 1, Chunk.indexOf(predictedX + loadDistance));
+        if (first == prefetchFirst && last == prefetchLast) {
+            return;
+        }
+        prefetchFirst = first;
+        prefetchLast = last;
+        for (int index = first; index <= last; index++) {
+            if (!loadedChunks.containsKey(index) && !preparedChunks.containsKey(index)
+                    && !unloadingChunks.containsKey(index)) {
+                int chunkIndex = index;
+                preparedChunks.put(index, workers.submit(() -> prepare(chunkIndex)));
+            }
+        }
+        Iterator<Map.Entry<Integer, Future<ChunkData>>> prepared = preparedChunks.entrySet().iterator();
+        while (prepared.hasNext()) {
+            Map.Entry<Integer, Future<ChunkData>> entry = prepared.next();
+            if (entry.getKey() < first || entry.getKey() > last) {
+                entry.getValue().cancel(false);
+                prepared.remove();
+            }
+        }
+    }
+
+    /**
+     * Computes everything needed to build a chunk, without creating game objects.
+     * Chunks found in the cache are restored instead of computed.
+     * @param index the chunk index.
+     * @return the chunk's data.
+     */
+    private ChunkData prepare(int index) {
+        ChunkData data = cache == null ? null : cache.get(index);
+        if (data != null) {
+            terrain.restoreChunk(data);
+            return data;
+        }
+        data = new ChunkData(index);
+        terrain.prepareChunk(data);
+        tree.prepareChunk(data);
+        return data;
+    }
+
+    /**
+     * Gets the data of a chunk, waiting for its worker if it is still being prepared
+     * and preparing it on the calling thread if it was never requested.
+     * @param index the chunk index.
+     * @return the chunk's data.
+     */
+    private ChunkData takePrepared(int index) {
+        Future<ChunkData> future = preparedChunks.remove(index);
+        if (future != null && !future.isCancelled()) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("failed to prepare chunk " + index, e.getCause());
+            }
+        }
+        return prepare(index);
+    }
+
+    /**
+     * Loads a chunk: its objects are created column by column by the jobs.
+     * A chunk whose objects are still being removed is finished first, and its data is reused.
+     * @param index the chunk index.
+     */
+    private void load(int index) {
+        Chunk unloading = unloadingChunks.remove(index);
+        ChunkData data;
+        if (unloading != null) {
+            long start = stats.begin();
+            unloading.unload(recycler);
+            stats.end(FrameStats.Phase.UNLOAD, start);
+            data = unloading.data();
+            Future<ChunkData> prepared = preparedChunks.remove(index);
+            if (prepared != null) {
+                prepared.cancel(false);
+            }
+        } else {
+            data = takePrepared(index);
+        }
+        if (cache != null) {
+            cache.remove(index);
+        }
+        loadedChunks.put(index, new Chunk(data, gameObjects, stats, spatialIndex));
+        buildingColumns.put(index, new int[1]);
+    }
+
+    /**
+     * Unloads a chunk: its objects are removed by the jobs, and it is cached once they are all gone.
+     * Columns of it that were not created yet never will be.
+     * @param index the chunk index.
+     */
+    private void unload(int index) {
+        Chunk chunk = loadedChunks.remove(index);
+        if (chunk != null) {
+            buildingColumns.remove(index);
+            unloadingChunks.put(index, chunk);
+        }
+    }
+
+    /**
+     * Works through the pending jobs until the deadline: first building loaded chunks, oldest first,
+     * one terrain step (a column or a merged run) at a time, then removing objects of unloaded chunks.
+     * Each kind of job makes some progress even if the deadline has already passed.
+     * @param deadline System.nanoTime value to stop at.
+     */
+    private void runJobs(long deadline) {
+        while (!buildingColumns.isEmpty()) {
+            Map.Entry<Integer, int[]> job = buildingColumns.entrySet().iterator().next();
+            Chunk chunk = loadedChunks.get(job.getKey());
+            int column = job.getValue()[0];
+            int stepEnd = terrain.stepEnd(chunk.data(), column);
+            job.getValue()[0] = stepEnd;
+            long start = stats.begin();
+            terrain.createColumns(chunk, column, stepEnd);
+            stats.end(FrameStats.Phase.TERRAIN, start);
+            start = stats.begin();
+            tree.createColumns(chunk, column, stepEnd);
+            stats.end(FrameStats.Phase.TREES, start);
+            columnsBuilt += stepEnd - column;
+            if (stepEnd == Chunk.COLUMNS) {
+                buildingColumns.remove(job.getKey());
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        while (!unloadingChunks.isEmpty()) {
+            Chunk chunk = unloadingChunks.values().iterator().next();
+            long start = stats.begin();
+            boolean done = chunk.unload(recycler, deadline);
+            if (done) {
+                unloadingChunks.remove(chunk.index());
+                if (cache != null) {
+                    cache.store(chunk.data());
+                }
+            }
+            stats.end(FrameStats.Phase.UNLOAD, start);
+            if (!done || System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package pepse.world;
+
+/**
+ * A game object that is only rendered while the FrustumCuller sees it.
+ */
+public interface Cullable {
+    /**
+     * Sets the culler that decides whether the object is visible.
+     * @param culler the culler of the object's game, or null to always count as visible.
+     */
+    void cullWith(FrustumCuller culler);
+
+    /**
+     * Marks the object as seen by the camera in a frame.
+     * @param frame the frame stamp of the culling pass.
+     */
+    void markVisible(long frame);
+}
@@ -0,0 +1,85 @@
+package pepse.world;
+
+import danogl.GameObject;
+import danogl.gui.rendering.Camera;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Decides, once per frame, which world objects the camera can see.
+ * Objects in the camera's view rectangle, found through the spatial index, are stamped with the
+ * current frame number; Cullable objects skip rendering (and, when static, updating) unless they
+ * carry the current stamp of their culler. Until the first culling pass everything counts as visible.
+ * Each game has its own culler, so several games in one process never mix up their stamps.
+ */
+public class FrustumCuller {
+    //frame stamp of the latest culling pass, 0 before the first one
+    private long frame;
+
+    private final SpatialIndex spatialIndex;
+    private final ObjIntConsumer<GameObject> marker = this::mark;
+    private float viewMinY;
+    private float viewMaxY;
+    private int visibleCount;
+
+    /**
+     * Constructor for FrustumCuller.
+     * @param spatialIndex index of the objects that may be culled.
+     */
+    public FrustumCuller(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * Checks whether an object was seen by the latest culling pass.
+     * @param visibleFrame the frame stamp the object was last marked with.
+     * @return true if the object is visible, or if culling never ran.
+     */
+    public boolean isVisible(long visibleFrame) {
+        return frame == 0 || visibleFrame == frame;
+    }
+
+    /**
+     * Marks every indexed object inside the camera's view as visible in a new frame.
+     * @param camera the camera, its center and dimensions give the view rectangle.
+     */
+    public void cull(Camera camera) {
+        frame++;
+        visibleCount = 0;
+        //the view is the camera's own rectangle, read without allocating its center
+        viewMinY = camera.getTopLeftCorner().y();
+        viewMaxY = viewMinY + camera.getDimensions().y();
+        float viewWidth = camera.getDimensions().x();
+        spatialIndex.forEachInView(camera.getTopLeftCorner().x() + viewWidth / 2, viewWidth, marker);
+    }
+
+    /**
+     * @return number of indexed objects the latest pass found in view.
+     */
+    public int visibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @return number of indexed objects, visible or not.
+     */
+    public int loadedCount() {
+        return spatialIndex.size();
+    }
+
+    /**
+     * Marks an object in the view's columns as visible if it also overlaps the view vertically.
+     * @param gameObject the object.
+     * @param layer the object's layer.
+     */
+    private void mark(GameObject gameObject, int layer) {
+        float top = gameObject.getTopLeftCorner().y();
+        if (top > viewMaxY || top + gameObject.getDimensions().y() < viewMinY) {
+            return;
+        }
+        visibleCount++;
+        if (gameObject instanceof Cullable) {
+            ((Cullable) gameObject).markVisible(frame);
+        }
+    }
+}
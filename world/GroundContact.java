@@ -0,0 +1,81 @@
+package pepse.world;
+
+import danogl.GameObject;
+
+/**
+ * Keeps moving objects on top of the ground by asking for the ground height under them,
+ * instead of colliding them with ground blocks. Checking a height per object is far cheaper
+ * than testing it against the block field, which matters for thousands of falling leaves.
+ * The ground is a height field, so it has no walls: an object walking into a step is lifted onto it.
+ */
+public class GroundContact {
+    /**
+     * Gets the height of the ground's surface.
+     */
+    @FunctionalInterface
+    public interface Surface {
+        /**
+         * @param x coordinate.
+         * @return y coordinate of the surface at x, or NaN if it is unknown there.
+         */
+        float heightAt(float x);
+    }
+
+    //keeps an object's right edge inside the last column it covers, rather than the next one
+    private static final float EDGE_EPSILON = 0.01f;
+
+    private final Surface surface;
+
+    /**
+     * Constructor for GroundContact.
+     * @param surface gets the ground height, e.g. from the terrain's height map.
+     */
+    public GroundContact(Surface surface) {
+        this.surface = surface;
+    }
+
+    /**
+     * @param x coordinate.
+     * @return y coordinate of the ground at x, or NaN if it is unknown there.
+     */
+    public float heightAt(float x) {
+        return surface.heightAt(x);
+    }
+
+    /**
+     * Gets the highest ground under a horizontal span, one column at a time.
+     * @param minX left edge of the span.
+     * @param maxX right edge of the span.
+     * @return the smallest ground y coordinate in the span, or NaN if it is unknown everywhere.
+     */
+    public float highestGround(float minX, float maxX) {
+        float highest = Float.NaN;
+        int lastColumn = (int) Math.floor((maxX - EDGE_EPSILON) / Block.SIZE);
+        for (int column = (int) Math.floor(minX / Block.SIZE); column <= lastColumn; column++) {
+            float height = surface.heightAt(column * Block.SIZE);
+            if (height < highest || Float.isNaN(highest)) {
+                highest = height;
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Lifts an object that sank into the ground back onto it, and stops it from falling further.
+     * @param body the object, at its new position.
+     * @return true if the object stands on the ground.
+     */
+    public boolean clamp(GameObject body) {
+        float x = body.getTopLeftCorner().x();
+        float height = body.getDimensions().y();
+        float ground = highestGround(x, x + body.getDimensions().x());
+        if (!(body.getTopLeftCorner().y() + height >= ground)) {
+            return false;
+        }
+        body.transform().setTopLeftCorner(x, ground - height);
+        if (body.getVelocity().y() > 0) {
+            body.transform().setVelocityY(0);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,158 @@
+package pepse.world;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Caches the ground height of every block column, one primitive array per chunk.
+ * Heights are stored quantised, as a number of blocks above the lowest ground level,
+ * so the (expensive) height function runs once per column for as long as its chunk is cached.
+ * Recently used chunks are also kept in a small array slotted by chunk index, so the lookups of
+ * every frame read a primitive index instead of boxing it into a map key.
+ */
+public class HeightMap {
+    //number of recently used chunks kept, a power of two, far more than a window's width of chunks
+    private static final int RECENT_SLOTS = 64;
+    private static final int RECENT_MASK = RECENT_SLOTS - 1;
+
+    private final IntUnaryOperator columnHeight;
+    private final float baseHeight;
+    private final Map<Integer, int[]> chunkHeights = new ConcurrentHashMap<>();
+    //slot index & RECENT_MASK holds the chunk last looked up there; slots are read and written by
+    //several threads, which is safe as each entry is immutable and never changes its chunk's heights
+    private final RecentChunk[] recentChunks = new RecentChunk[RECENT_SLOTS];
+
+    /**
+     * The heights of a recently used chunk, with the chunk's index.
+     */
+    private static class RecentChunk {
+        private final int index;
+        private final int[] heights;
+
+        /**
+         * Constructor for RecentChunk.
+         * @param index the chunk index.
+         * @param heights height of each column in the chunk, in blocks.
+         */
+        private RecentChunk(int index, int[] heights) {
+            this.index = index;
+            this.heights = heights;
+        }
+    }
+
+    /**
+     * Constructor for HeightMap.
+     * @param columnHeight gets the height of a column (in blocks above baseHeight) by column index.
+     * @param baseHeight the lowest ground height (y coordinate).
+     */
+    public HeightMap(IntUnaryOperator columnHeight, float baseHeight) {
+        this.columnHeight = columnHeight;
+        this.baseHeight = baseHeight;
+    }
+
+    /**
+     * Gets the ground height (y coordinate) of the column containing the given x coordinate.
+     * @param x coordinate.
+     * @return ground height.
+     */
+    public float heightAt(float x) {
+        int column = Math.floorDiv((int) Math.floor(x), Block.SIZE);
+        int[] heights = heightsOfChunk(Math.floorDiv(column, Chunk.COLUMNS));
+        return baseHeight - heights[Math.floorMod(column, Chunk.COLUMNS)] * Block.SIZE;
+    }
+
+    /**
+     * Writes the ground height of every column in the given x range into out.
+     * out[i] receives the height of the column at minX + i * Block.SIZE.
+     * @param minX first x value in range.
+     * @param maxX last x value in range (exclusive).
+     * @param out receives the heights, must fit (maxX - minX) / Block.SIZE values.
+     */
+    public void heightsInRange(int minX, int maxX, float[] out) {
+        int firstColumn = Math.floorDiv(minX, Block.SIZE);
+        int columns = (maxX - minX + Block.SIZE - 1) / Block.SIZE;
+        int i = 0;
+        while (i < columns) {
+            int column = firstColumn + i;
+            int[] heights = heightsOfChunk(Math.floorDiv(column, Chunk.COLUMNS));
+            for (int offset = Math.floorMod(column, Chunk.COLUMNS); offset < Chunk.COLUMNS && i < columns;
+                 offset++) {
+                out[i++] = baseHeight - heights[offset] * Block.SIZE;
+            }
+        }
+    }
+
+    /**
+     * Caches the heights of a chunk that are already known, e.g. restored from a chunk cache.
+     * @param index the chunk index.
+     * @param groundHeights ground height (y coordinate) of each column in the chunk.
+     */
+    public void putChunk(int index, float[] groundHeights) {
+        int[] heights = new int[Chunk.COLUMNS];
+        for (int i = 0; i < Chunk.COLUMNS; i++) {
+            heights[i] = Math.round((baseHeight - groundHeights[i]) / Block.SIZE);
+        }
+        chunkHeights.putIfAbsent(index, heights);
+    }
+
+    /**
+     * Drops the cached heights of chunks that are far from the given x coordinate.
+     * @param x coordinate, usually the avatar's.
+     * @param distance chunks whose nearest edge is farther than this are dropped.
+     */
+    public void evictFarFrom(float x, float distance) {
+        Iterator<Integer> indices = chunkHeights.keySet().iterator();
+        while (indices.hasNext()) {
+            int index = indices.next();
+            float chunkMinX = index * Chunk.WIDTH;
+            if (x - (chunkMinX + Chunk.WIDTH) > distance || chunkMinX - x > distance) {
+                indices.remove();
+                RecentChunk recent = recentChunks[index & RECENT_MASK];
+                if (recent != null && recent.index == index) {
+                    recentChunks[index & RECENT_MASK] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of chunks whose heights are cached.
+     */
+    public int cachedChunkCount() {
+        return chunkHeights.size();
+    }
+
+    /**
+     * Gets the quantised heights of a chunk, computing them on first use.
+     * @param index the chunk index.
+     * @return height of each column in the chunk, in blocks.
+     */
+    private int[] heightsOfChunk(int index) {
+        RecentChunk recent = recentChunks[index & RECENT_MASK];
+        if (recent != null && recent.index == index) {
+            return recent.heights;
+        }
+        int[] heights = chunkHeights.get(index);
+        if (heights == null) {
+            heights = chunkHeights.computeIfAbsent(index, this::computeChunk);
+        }
+        recentChunks[index & RECENT_MASK] = new RecentChunk(index, heights);
+        return heights;
+    }
+
+    /**
+     * Computes the quantised heights of a chunk.
+     * @param index the chunk index.
+     * @return height of each column in the chunk, in blocks.
+     */
+    private int[] computeChunk(int index) {
+        int[] heights = new int[Chunk.COLUMNS];
+        int firstColumn = index * Chunk.COLUMNS;
+        for (int i = 0; i < Chunk.COLUMNS; i++) {
+            heights[i] = columnHeight.applyAsInt(firstColumn + i);
+        }
+        return heights;
+    }
+}
@@ -0,0 +1,256 @@
+package pepse.world;
+
+import danogl.GameObject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Indexes game objects by x coordinate, in a grid of fixed-width buckets.
+ * An object lives in the bucket of its left edge, so range queries only visit the buckets
+ * the range covers (widened by the widest indexed object) instead of scanning every object.
+ * Moving objects must be reported with moved, which only touches the index when the object
+ * crosses into another bucket.
+ * Buckets are kept in a fixed ring of lists, indexed by the bucket number modulo the ring size, so
+ * looking a bucket up never allocates. Buckets a whole ring apart share a list; every query checks
+ * the actual position of the objects it visits.
+ */
+public class SpatialIndex {
+    public static final int DEFAULT_BUCKET_WIDTH = 4 * Block.SIZE;
+    //number of lists in the ring, a power of two
+    private static final int RING_SIZE = 1024;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private final int bucketWidth;
+    private final ArrayList<Entry>[] ring = newRing();
+    private final Map<GameObject, Entry> entries = new IdentityHashMap<>();
+    //width of the widest object ever indexed, queries look this far to the left of their range
+    private float maxWidth;
+
+    /**
+     * An indexed object and where it is stored.
+     */
+    private static class Entry {
+        private final GameObject gameObject;
+        private final int layer;
+        //the entry's list in the ring, and its position in the list
+        private int slot;
+        private int position;
+
+        /**
+         * Constructor for Entry.
+         * @param gameObject the indexed object.
+         * @param layer the object's layer.
+         */
+        private Entry(GameObject gameObject, int layer) {
+            this.gameObject = gameObject;
+            this.layer = layer;
+        }
+    }
+
+    /**
+     * Constructor for SpatialIndex.
+     * @param bucketWidth width of each bucket of the grid.
+     */
+    public SpatialIndex(int bucketWidth) {
+        this.bucketWidth = bucketWidth;
+    }
+
+    /**
+     * Starts indexing an object.
+     * @param gameObject the object, at its current position.
+     * @param layer the object's layer.
+     */
+    public void add(GameObject gameObject, int layer) {
+        Entry entry = new Entry(gameObject, layer);
+        entries.put(gameObject, entry);
+        maxWidth = Math.max(maxWidth, gameObject.getDimensions().x());
+        insert(entry, bucketOf(gameObject.getTopLeftCorner().x()));
+    }
+
+    /**
+     * Stops indexing an object.
+     * @param gameObject the object.
+     * @return true if the object was indexed.
+     */
+    public boolean remove(GameObject gameObject) {
+        Entry entry = entries.remove(gameObject);
+        if (entry == null) {
+            return false;
+        }
+        detach(entry);
+        return true;
+    }
+
+    /**
+     * Updates the index after an object moved.
+     * @param gameObject the object, at its new position.
+     */
+    public void moved(GameObject gameObject) {
+        Entry entry = entries.get(gameObject);
+        if (entry == null) {
+            return;
+        }
+        int bucket = bucketOf(gameObject.getTopLeftCorner().x());
+        if ((bucket & RING_MASK) != entry.slot) {
+            detach(entry);
+            insert(entry, bucket);
+        }
+    }
+
+    /**
+     * @return number of indexed objects.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Visits every object that overlaps the given x range.
+     * @param minX first x value in range.
+     * @param maxX last x value in range (exclusive).
+     * @param visitor receives each object and its layer.
+     */
+    public void forEachInRange(float minX, float maxX, ObjIntConsumer<GameObject> visitor) {
+        int first = bucketOf(minX - maxWidth);
+        int count = Math.min(bucketOf(maxX) - first + 1, RING_SIZE);
+        for (int bucket = first; bucket < first + count; bucket++) {
+            ArrayList<Entry> bucketEntries = ring[bucket & RING_MASK];
+            if (bucketEntries == null) {
+                continue;
+            }
+            for (int i = 0; i < bucketEntries.size(); i++) {
+                Entry entry = bucketEntries.get(i);
+                if (overlaps(entry.gameObject, minX, maxX)) {
+                    visitor.accept(entry.gameObject, entry.layer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops indexing every object of a layer that overlaps the given x range.
+     * @param minX first x value in range.
+     * @param maxX last x value in range (exclusive).
+     * @param layer the layer of the objects to remove, objects of other layers stay indexed.
+     * @param removed receives each removed object and its layer, e.g. to remove it from the game.
+     */
+    public void removeInRange(float minX, float maxX, int layer, ObjIntConsumer<GameObject> removed) {
+        int first = bucketOf(minX - maxWidth);
+        int count = Math.min(bucketOf(maxX) - first + 1, RING_SIZE);
+        for (int bucket = first; bucket < first + count; bucket++) {
+            ArrayList<Entry> bucketEntries = ring[bucket & RING_MASK];
+            if (bucketEntries == null) {
+                continue;
+            }
+            //walk backwards, the swap-removal only moves entries that were already visited
+            for (int i = bucketEntries.size() - 1; i >= 0; i--) {
+                Entry entry = bucketEntries.get(i);
+                if (entry.layer == layer && overlaps(entry.gameObject, minX, maxX)) {
+                    entries.remove(entry.gameObject);
+                    detach(entry);
+                    removed.accept(entry.gameObject, entry.layer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the highest top edge, among objects of a layer, above a given x coordinate.
+     * @param x coordinate.
+     * @param layer the layer of the ground objects.
+     * @return the smallest y coordinate of a top edge, or NaN if no object of the layer covers x.
+     */
+    public float nearestGround(float x, int layer) {
+        float top = Float.NaN;
+        int first = bucketOf(x - maxWidth);
+        int count = Math.min(bucketOf(x) - first + 1, RING_SIZE);
+        for (int bucket = first; bucket < first + count; bucket++) {
+            ArrayList<Entry> bucketEntries = ring[bucket & RING_MASK];
+            if (bucketEntries == null) {
+                continue;
+            }
+            for (int i = 0; i < bucketEntries.size(); i++) {
+                Entry entry = bucketEntries.get(i);
+                if (entry.layer == layer && overlaps(entry.gameObject, x, x)) {
+                    float entryTop = entry.gameObject.getTopLeftCorner().y();
+                    if (Float.isNaN(top) || entryTop < top) {
+                        top = entryTop;
+                    }
+                }
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Visits every object the camera can see (horizontally).
+     * @param cameraCenterX x coordinate of the camera's center, in world coordinates.
+     * @param viewWidth width of the camera's view.
+     * @param visitor receives each object and its layer.
+     */
+    public void forEachInView(float cameraCenterX, float viewWidth, ObjIntConsumer<GameObject> visitor) {
+        forEachInRange(cameraCenterX - viewWidth / 2, cameraCenterX + viewWidth / 2, visitor);
+    }
+
+    /**
+     * Gets the bucket containing an x coordinate.
+     * @param x coordinate.
+     * @return bucket index.
+     */
+    private int bucketOf(float x) {
+        return Math.floorDiv((int) Math.floor(x), bucketWidth);
+    }
+
+    /**
+     * Checks whether an object overlaps an x range. An empty range checks a single point.
+     * @param gameObject the object.
+     * @param minX first x value in range.
+     * @param maxX last x value in range (exclusive).
+     * @return true if the object overlaps the range.
+     */
+    private static boolean overlaps(GameObject gameObject, float minX, float maxX) {
+        float left = gameObject.getTopLeftCorner().x();
+        float right = left + gameObject.getDimensions().x();
+        return left <= maxX && right > minX && (left < maxX || minX == maxX);
+    }
+
+    /**
+     * Appends an entry to a bucket's list.
+     * @param entry the entry.
+     * @param bucket the bucket index.
+     */
+    private void insert(Entry entry, int bucket) {
+        int slot = bucket & RING_MASK;
+        if (ring[slot] == null) {
+            ring[slot] = new ArrayList<>();
+        }
+        entry.slot = slot;
+        entry.position = ring[slot].size();
+        ring[slot].add(entry);
+    }
+
+    /**
+     * Removes an entry from its list. The list's last entry takes over its position.
+     * @param entry the entry.
+     */
+    private void detach(Entry entry) {
+        ArrayList<Entry> bucketEntries = ring[entry.slot];
+        Entry last = bucketEntries.remove(bucketEntries.size() - 1);
+        if (last != entry) {
+            bucketEntries.set(entry.position, last);
+            last.position = entry.position;
+        }
+    }
+
+    /**
+     * Creates the ring of bucket lists, all empty until first used.
+     * @return the ring.
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Entry>[] newRing() {
+        return (ArrayList<Entry>[]) new ArrayList<?>[RING_SIZE];
+    }
+}
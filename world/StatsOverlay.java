@@ -0,0 +1,76 @@
+package pepse.world;
+
+import danogl.GameObject;
+import danogl.collisions.GameObjectCollection;
+import danogl.components.CoordinateSpace;
+import danogl.gui.rendering.TextRenderable;
+import danogl.util.Vector2;
+import pepse.util.FrameStats;
+import pepse.util.ObjectPool;
+
+import java.awt.*;
+import java.util.Map;
+
+/**
+ * A line of text in the corner of the screen showing the recent frame stats.
+ */
+public class StatsOverlay {
+    private static final Vector2 TOP_LEFT = new Vector2(10, 10);
+    private static final Vector2 DIMENSIONS = new Vector2(900, 20);
+    private static final Color TEXT_COLOR = Color.WHITE;
+    //seconds between refreshes of the text
+    private static final float REFRESH_TIME = 0.5f;
+    private static final String OVERLAY_TAG = "statsOverlay";
+
+    /**
+     * Creates the overlay.
+     * @param gameObjects all game objects in the game.
+     * @param layer the layer of this game object in the game.
+     * @param stats the stats to show.
+     * @return overlay game object.
+     */
+    public static GameObject create(GameObjectCollection gameObjects, int layer, FrameStats stats) {
+        TextRenderable text = new TextRenderable("");
+        text.setColor(TEXT_COLOR);
+        GameObject overlay = new GameObject(TOP_LEFT, DIMENSIONS, text);
+        overlay.setCoordinateSpace(CoordinateSpace.CAMERA_COORDINATES);
+        float[] sinceRefresh = {REFRESH_TIME};
+        overlay.addComponent(deltaTime -> {
+            sinceRefresh[0] += deltaTime;
+            if (sinceRefresh[0] >= REFRESH_TIME) {
+                sinceRefresh[0] = 0;
+                text.setString(describe(stats));
+            }
+        });
+        gameObjects.addGameObject(overlay, layer);
+        overlay.setTag(OVERLAY_TAG); //for debug
+        return overlay;
+    }
+
+    /**
+     * Formats the stats as one line.
+     * @param stats the stats.
+     * @return p99 cost of every phase in milliseconds, and the object counts.
+     */
+    private static String describe(FrameStats stats) {
+        StringBuilder line = new StringBuilder("p99 ms:");
+        for (FrameStats.Phase phase : FrameStats.Phase.values()) {
+            line.append(String.format(" %s %.2f", phase.name().toLowerCase(),
+                    stats.percentileMillis(phase, 99)));
+        }
+        int liveObjects = 0;
+        for (int count : stats.liveObjects().values()) {
+            liveObjects += count;
+        }
+        line.append(String.format(" | objects %d +%d -%d | visible %d/%d | pairs %d checked %d", liveObjects,
+                stats.createdLastFrame(), stats.removedLastFrame(), stats.visibleObjects(), stats.loadedObjects(),
+                stats.candidatePairs(), stats.narrowChecks()));
+        line.append(String.format(" | columns +%d pending %d, removals pending %d", stats.columnsBuiltLastFrame(),
+                stats.pendingColumns(), stats.pendingRemovals()));
+        line.append(" | pool hits");
+        for (Map.Entry<String, ObjectPool<?>> entry : stats.pools().entrySet()) {
+            line.append(String.format(" %s %.0f%%", entry.getKey(), entry.getValue().hitRate() * 100));
+        }
+        return line.toString();
+    }
+}
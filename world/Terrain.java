@@ -1,42 +1,111 @@
 package pepse.world;
 
-import danogl.collisions.GameObjectCollection;
-import danogl.gui.rendering.RectangleRenderable;
+import danogl.GameObject;
+import danogl.gui.rendering.ImageRenderable;
+import danogl.gui.rendering.Renderable;
 import danogl.util.Vector2;
 import pepse.util.ColorSupplier;
 import pepse.util.PerlinNoise;
+import pepse.util.TiledRenderable;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Produces all the necessary blocks for the game.
  * In addition, It allows other objects to know what the height of the ground is at a given X coordinate.
  */
 public class Terrain {
+    /**
+     * The ways the ground beneath the surface can be built.
+     */
+    public enum Mode {
+        /** every ground cell is its own block. */
+        BLOCKS,
+        /** each run of equally high columns is one block spanning the full depth. */
+        MERGED_COLUMNS,
+        /** the whole chunk is drawn from one prebaked image, surface blocks only collide. */
+        BAKED,
+        /** the ground is a deep grid of cells carved by caves, only cells touching air get blocks. */
+        CAVES,
+        /** the ground is tiles of a tile map, no blocks at all. */
+        TILE_MAP
+    }
+
     private static final double HEIGHT_MULTIPLIER = 10;
     private static final int LOOKS_GOOD_SEED = 508; // seed which results in a good terrain
     private static final double CONTINUOUS_COEFFICIENT = 0.05f; // makes terrain look more "continuous"
-    private final GameObjectCollection gameObjects;
     private final int groundLayer;
     private final float groundHeightAtX0;
     private final PerlinNoise noiseGenerator;
+    private final PerlinNoise caveNoise;
+    private final HeightMap heightMap;
+    private final WorldPools pools;
     private static final Color BASE_GROUND_COLOR = new Color(212, 123, 74);
     private static final int TERRAIN_DEPTH = 20;
+    private static final long COLOR_SALT = 1;
+    //rows of cells below the surface in cave terrain, one bit each
+    private static final int CAVE_ROWS = Long.SIZE;
+    //rows below the surface that caves never reach, so the surface stays where the heightmap says
+    private static final int CAVE_CRUST = 3;
+    private static final int CAVE_SEED_OFFSET = 1;
+    private static final int CAVE_OCTAVES = 3;
+    private static final double CAVE_SCALE = 1.0;
+    //cells whose cave noise is closer to zero than this are air, which makes winding tunnels
+    private static final double CAVE_WIDTH = 0.06;
+    private final int seed;
+    private Mode mode = Mode.BLOCKS;
+    private TileMap tileMap;
+    //tile type of each ground palette variant
+    private final byte[] groundTiles = new byte[ColorSupplier.PALETTE_SIZE];
 
 
     /**
      * Constructor for Terrain.
      *
-     * @param gameObjects all game objects in the game.
      * @param groundLayer the layer of the ground blocks.
      * @param seed initializes random number generator.
+     * @param pools provides the ground blocks.
      */
-    public Terrain(GameObjectCollection gameObjects, int groundLayer, Vector2 windowDimensions, int seed) {
-        this.gameObjects = gameObjects;
+    public Terrain(int groundLayer, Vector2 windowDimensions, int seed, WorldPools pools) {
         this.groundLayer = groundLayer;
+        this.pools = pools;
+        this.seed = seed;
         groundHeightAtX0 = windowDimensions.y() - Block.SIZE;
         int seed1 = seed + LOOKS_GOOD_SEED;
         this.noiseGenerator = new PerlinNoise(seed1);
+        this.caveNoise = new PerlinNoise(seed1 + CAVE_SEED_OFFSET, CAVE_OCTAVES);
+        this.heightMap = new HeightMap(this::columnHeight, groundHeightAtX0);
+    }
+
+    /**
+     * @return the cache of ground heights shared by everyone asking for the ground height.
+     */
+    public HeightMap heightMap() {
+        return heightMap;
+    }
+
+    /**
+     * Sets how the ground beneath the surface is built for chunks created from now on.
+     * @param mode the terrain mode.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Sets the tile map the ground goes into in tile map mode, and registers the ground's tiles in it.
+     * @param tileMap the tile map.
+     */
+    public void setTileMap(TileMap tileMap) {
+        this.tileMap = tileMap;
+        for (int variant = 0; variant < groundTiles.length; variant++) {
+            groundTiles[variant] = tileMap.addTileType(
+                    ColorSupplier.paletteRenderable(BASE_GROUND_COLOR, variant), true);
+        }
     }
 
     /**
@@ -45,42 +114,323 @@ public class Terrain {
      * @return ground height.
      */
     public float groundHeightAt(float x) {
-        int generatedHeight =
-                (int) (Math.abs(noiseGenerator.noise(CONTINUOUS_COEFFICIENT*x)) * HEIGHT_MULTIPLIER) * Block.SIZE;
-        return (this.groundHeightAtX0 - generatedHeight);
+        return heightMap.heightAt(x);
+    }
+
+    /**
+     * Computes the height of a block column with the perlin noise algorithm.
+     * @param column the column index (x coordinate divided by Block.SIZE).
+     * @return number of blocks the ground rises above its lowest level.
+     */
+    private int columnHeight(int column) {
+        float x = column * Block.SIZE;
+        return (int) (Math.abs(noiseGenerator.noise(CONTINUOUS_COEFFICIENT*x)) * HEIGHT_MULTIPLIER);
+    }
+
+    /**
+     * Computes the ground heights and colours of a chunk. Creates no game objects,
+     * so it may run on any thread.
+     * @param data receives the heights and colours.
+     */
+    public void prepareChunk(ChunkData data) {
+        heightMap.heightsInRange(data.minX(), data.maxX(), data.groundHeights());
+        int[] groundColors = data.groundColors();
+        int firstColumn = data.minX() / Block.SIZE;
+        for (int i = 0; i < groundColors.length; i++) {
+            groundColors[i] = ColorSupplier.variantAt(seed, firstColumn + i, COLOR_SALT);
+        }
+        if (mode == Mode.BAKED) {
+            bakeChunk(data);
+        } else if (mode == Mode.CAVES) {
+            carveChunk(data);
+        }
+    }
+
+    /**
+     * Finishes the data of a chunk restored from a chunk cache: caches its heights,
+     * and bakes its ground if the terrain is baked.
+     * @param data the restored heights and colours.
+     */
+    public void restoreChunk(ChunkData data) {
+        heightMap.putChunk(data.index(), data.groundHeights());
+        if (mode == Mode.BAKED) {
+            bakeChunk(data);
+        } else if (mode == Mode.CAVES && data.solidCells() == null) {
+            carveChunk(data);
+        }
+    }
+
+    /**
+     * Carves caves into the ground of a chunk: decides which cells below each column's surface are solid,
+     * and which of those touch air.
+     * @param data the chunk's heights, receives the cells.
+     */
+    private void carveChunk(ChunkData data) {
+        //one extra column on each side, to know whether the edge cells touch air
+        long[] solid = new long[Chunk.COLUMNS + 2];
+        float[] surfaces = new float[Chunk.COLUMNS + 2];
+        int firstColumn = Math.floorDiv(data.minX(), Block.SIZE) - 1;
+        for (int i = 0; i < solid.length; i++) {
+            int column = firstColumn + i;
+            surfaces[i] = heightMap.heightAt(column * Block.SIZE);
+            solid[i] = solidCells(column, surfaces[i]);
+        }
+        long[] exposed = new long[Chunk.COLUMNS];
+        for (int i = 1; i <= Chunk.COLUMNS; i++) {
+            long cells = solid[i];
+            //the cell above the first row is air, the cell below the last row is solid
+            long airAbove = ~(cells << 1);
+            long airBelow = ~((cells >>> 1) | Long.MIN_VALUE);
+            long airLeft = ~alignedCells(solid[i - 1], surfaces[i], surfaces[i - 1]);
+            long airRight = ~alignedCells(solid[i + 1], surfaces[i], surfaces[i + 1]);
+            exposed[i - 1] = cells & (airAbove | airBelow | airLeft | airRight);
+        }
+        data.setCells(Arrays.copyOfRange(solid, 1, Chunk.COLUMNS + 1), exposed);
+    }
+
+    /**
+     * Decides which cells below a column's surface are solid.
+     * @param column the column index.
+     * @param surface ground height (y coordinate) of the column.
+     * @return bit r is set if the cell r blocks below the surface is solid.
+     */
+    private long solidCells(int column, float surface) {
+        long cells = 0;
+        int surfaceRow = Math.round(surface / Block.SIZE);
+        for (int row = 0; row < CAVE_ROWS; row++) {
+            double value = row < CAVE_CRUST ? 1 :
+                    caveNoise.noise(column * CAVE_SCALE, (surfaceRow + row) * CAVE_SCALE);
+            if (Math.abs(value) >= CAVE_WIDTH) {
+                cells |= 1L << row;
+            }
+        }
+        return cells;
     }
 
     /**
-     * Creates ground blocks at given x range.
-     * @param minX first x value in range.
-     * @param maxX last x value in range.
+     * Lines a neighbouring column's cells up with a column's rows.
+     * @param neighborCells the neighbour's solid cells.
+     * @param surface ground height of the column.
+     * @param neighborSurface ground height of the neighbour.
+     * @return bit r is set if the neighbour's cell level with the column's row r is solid.
+     *         Cells above the neighbour's surface are air, cells below its last row are solid.
      */
-    public void createInRange(int minX, int maxX) {
-        for (int xValue = minX; xValue < maxX; xValue += Block.SIZE) {
-            RectangleRenderable rectangleRenderable =
-                    new RectangleRenderable(ColorSupplier.approximateColor(BASE_GROUND_COLOR));
-            float groundHeightAtX = groundHeightAt(xValue);
+    private static long alignedCells(long neighborCells, float surface, float neighborSurface) {
+        int shift = Math.round((surface - neighborSurface) / Block.SIZE);
+        if (shift >= CAVE_ROWS) {
+            return -1L;
+        } else if (shift <= -CAVE_ROWS) {
+            return 0;
+        } else if (shift >= 0) {
+            return shift == 0 ? neighborCells : (neighborCells >>> shift) | (-1L << (CAVE_ROWS - shift));
+        }
+        return neighborCells << -shift;
+    }
+
+    /**
+     * Draws the ground of a whole chunk, surface and depth, into one image.
+     * @param data the chunk's heights and colours, receives the image.
+     */
+    private void bakeChunk(ChunkData data) {
+        float[] groundHeights = data.groundHeights();
+        int[] groundColors = data.groundColors();
+        float top = groundHeights[0];
+        float bottom = groundHeights[0];
+        for (float groundHeight : groundHeights) {
+            top = Math.min(top, groundHeight);
+            bottom = Math.max(bottom, groundHeight);
+        }
+        int columnHeight = TERRAIN_DEPTH * Block.SIZE;
+        int imageHeight = (int) (bottom - top) + columnHeight;
+        BufferedImage image = new BufferedImage(Chunk.WIDTH, imageHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        for (int column = 0; column < groundHeights.length; column++) {
+            graphics.setColor(ColorSupplier.paletteColor(BASE_GROUND_COLOR, groundColors[column]));
+            graphics.fillRect(column * Block.SIZE, (int) (groundHeights[column] - top), Block.SIZE, columnHeight);
+        }
+        graphics.dispose();
+        data.setBakedGround(new ImageRenderable(image), top, imageHeight);
+    }
+
+    /**
+     * Creates ground blocks for every column of the given chunk.
+     * @param chunk the chunk to fill, it owns the created blocks.
+     */
+    public void createInChunk(Chunk chunk) {
+        createColumns(chunk, 0, Chunk.COLUMNS);
+    }
+
+    /**
+     * Gets where a step of building a chunk's ground that starts at a column may end. In merged mode
+     * a step covers a whole run of equally high columns, so building step by step merges exactly
+     * as much as building the whole chunk at once; otherwise a step is one column.
+     * @param data the chunk's data.
+     * @param fromColumn first column of the step.
+     * @return first column after the step.
+     */
+    public int stepEnd(ChunkData data, int fromColumn) {
+        int toColumn = fromColumn + 1;
+        if (mode != Mode.MERGED_COLUMNS) {
+            return toColumn;
+        }
+        float[] groundHeights = data.groundHeights();
+        while (toColumn < Chunk.COLUMNS && groundHeights[toColumn] == groundHeights[fromColumn]) {
+            toColumn++;
+        }
+        return toColumn;
+    }
+
+    /**
+     * Creates the ground of a range of a chunk's columns, so a chunk can be built over several frames.
+     * Columns must be created in order, each exactly once. Merged runs end at the range's end,
+     * so ranges should end where stepEnd says.
+     * @param chunk the chunk to fill, it owns the created blocks.
+     * @param fromColumn first column to create, 0 for the chunk's first.
+     * @param toColumn first column after the range.
+     */
+    public void createColumns(Chunk chunk, int fromColumn, int toColumn) {
+        if (mode == Mode.TILE_MAP && tileMap != null) {
+            fillTiles(chunk, fromColumn, toColumn);
+            return;
+        }
+        if (fromColumn == 0 && mode == Mode.BAKED && chunk.data().bakedGround() != null) {
+            addBakedGround(chunk);
+        }
+        //columns of the current run of equally high columns (merged mode only)
+        List<Renderable> runTiles = new ArrayList<>();
+        int runMinX = chunk.minX();
+        float runHeight = 0;
+        float[] groundHeights = chunk.data().groundHeights();
+        int[] groundColors = chunk.data().groundColors();
+        int endX = chunk.minX() + toColumn * Block.SIZE;
+        for (int xValue = chunk.minX() + fromColumn * Block.SIZE; xValue < endX; xValue += Block.SIZE) {
+            int column = (xValue - chunk.minX()) / Block.SIZE;
+            Renderable rectangleRenderable =
+                    ColorSupplier.paletteRenderable(BASE_GROUND_COLOR, groundColors[column]);
+            float groundHeightAtX = groundHeights[column];
             Vector2 blockTopLeft = new Vector2(xValue, groundHeightAtX);
-            Block newBlock = new Block(blockTopLeft, rectangleRenderable);
-            gameObjects.addGameObject(newBlock, groundLayer);
-            addGroundBeneath(xValue, rectangleRenderable, groundHeightAtX);
+            if (mode == Mode.CAVES && chunk.data().exposedCells() != null) {
+                addExposedCells(chunk, xValue, rectangleRenderable, groundHeightAtX,
+                        chunk.data().exposedCells()[column]);
+                continue;
+            }
+            if (mode == Mode.BAKED && chunk.data().bakedGround() != null) {
+                //the baked image draws the surface, the block only collides
+                chunk.addGameObject(pools.block(blockTopLeft, null), groundLayer);
+                continue;
+            }
+            Block newBlock = pools.block(blockTopLeft, rectangleRenderable);
+            chunk.addGameObject(newBlock, groundLayer);
+            if (mode != Mode.MERGED_COLUMNS) {
+                addGroundBeneath(chunk, xValue, rectangleRenderable, groundHeightAtX);
+                continue;
+            }
+            if (!runTiles.isEmpty() && groundHeightAtX != runHeight) {
+                addMergedGroundBeneath(chunk, runMinX, runHeight, runTiles);
+                runTiles.clear();
+            }
+            if (runTiles.isEmpty()) {
+                runMinX = xValue;
+                runHeight = groundHeightAtX;
+            }
+            runTiles.add(rectangleRenderable);
+        }
+        if (!runTiles.isEmpty()) {
+            addMergedGroundBeneath(chunk, runMinX, runHeight, runTiles);
+        }
+    }
 
+    /**
+     * Adds a range of a chunk's ground columns to the tile map. The chunk's grid is added with its first
+     * column, and dropped again when the chunk is unloaded.
+     * Columns carved by caves get their solid cells, the others the full terrain depth.
+     * @param chunk the chunk to fill.
+     * @param fromColumn first column to fill.
+     * @param toColumn first column after the range.
+     */
+    private void fillTiles(Chunk chunk, int fromColumn, int toColumn) {
+        ChunkData data = chunk.data();
+        if (fromColumn == 0) {
+            tileMap.addChunk(chunk.index());
+            chunk.onUnload(() -> tileMap.removeChunk(chunk.index()));
+        }
+        int firstColumn = TileMap.columnOf(chunk.minX());
+        for (int column = fromColumn; column < toColumn; column++) {
+            byte tile = groundTiles[data.groundColors()[column]];
+            //the middle of the surface cell, so rounding never picks the row above
+            int surfaceRow = tileMap.rowOf(data.groundHeights()[column] + Block.SIZE / 2f);
+            long cells = data.solidCells() != null ? data.solidCells()[column] : (1L << TERRAIN_DEPTH) - 1;
+            while (cells != 0) {
+                int row = Long.numberOfTrailingZeros(cells);
+                cells &= cells - 1;
+                tileMap.setTile(firstColumn + column, surfaceRow + row, tile);
+            }
+        }
+    }
+
+    /**
+     * Adds the background object that draws the chunk's baked ground image.
+     * @param chunk the chunk that owns the object.
+     */
+    private void addBakedGround(Chunk chunk) {
+        ChunkData data = chunk.data();
+        GameObject bakedGround = new GameObject(new Vector2(chunk.minX(), data.bakedGroundTop()),
+                new Vector2(Chunk.WIDTH, data.bakedGroundHeight()), data.bakedGround());
+        chunk.addGameObject(bakedGround, groundLayer+1);
+    }
+
+    /**
+     * Adds a block for every solid cell of a column that touches air.
+     * @param chunk the chunk that owns the blocks.
+     * @param xValue x coordinate of the column.
+     * @param rectangleRenderable renderable of the blocks.
+     * @param groundHeightAtX ground height (y coordinate) of the column.
+     * @param exposedCells bit r is set if the cell r blocks below the surface gets a block.
+     */
+    private void addExposedCells(Chunk chunk, int xValue, Renderable rectangleRenderable, float groundHeightAtX,
+                                 long exposedCells) {
+        long cells = exposedCells;
+        while (cells != 0) {
+            int row = Long.numberOfTrailingZeros(cells);
+            cells &= cells - 1;
+            Vector2 topLeft = new Vector2(xValue, groundHeightAtX + row * Block.SIZE);
+            //every one of these cells touches air, so all of them are surface
+            chunk.addGameObject(pools.block(topLeft, rectangleRenderable), groundLayer);
         }
     }
 
     /**
      * Adds ground beneath the ground generated by the perlin noise algorithm.
+     * @param chunk the chunk that owns the blocks.
      * @param xValue current x coordinate of the ground.
      * @param rectangleRenderable renderable of the blocks.
      * @param groundHeightAtX ground height (y coordinate) at current x coordinate
      */
-    private void addGroundBeneath(int xValue, RectangleRenderable rectangleRenderable,
+    private void addGroundBeneath(Chunk chunk, int xValue, Renderable rectangleRenderable,
                                   float groundHeightAtX) {
         for (int i = 0; i < TERRAIN_DEPTH; i++) {
             Vector2 underlyingBlockCoords = new Vector2(xValue, groundHeightAtX + Block.SIZE * i);
-            Block underlyingBlock = new Block(underlyingBlockCoords, rectangleRenderable);
-            gameObjects.addGameObject(underlyingBlock, groundLayer+1);
+            Block underlyingBlock = pools.block(underlyingBlockCoords, rectangleRenderable);
+            chunk.addGameObject(underlyingBlock, groundLayer+1);
 
         }
     }
+
+    /**
+     * Adds a single block beneath a run of equally high surface blocks.
+     * The block spans the full terrain depth and draws one tile per hidden ground block.
+     * @param chunk the chunk that owns the block.
+     * @param minX x coordinate of the first column in the run.
+     * @param groundHeight ground height (y coordinate) of the run.
+     * @param columnTiles renderable of each column in the run.
+     */
+    private void addMergedGroundBeneath(Chunk chunk, int minX, float groundHeight,
+                                        List<Renderable> columnTiles) {
+        int rows = TERRAIN_DEPTH - 1;
+        Vector2 topLeft = new Vector2(minX, groundHeight + Block.SIZE);
+        Vector2 dimensions = new Vector2(columnTiles.size() * Block.SIZE, rows * Block.SIZE);
+        TiledRenderable tiledRenderable =
+                new TiledRenderable(columnTiles.toArray(new Renderable[0]), rows);
+        chunk.addGameObject(pools.block(topLeft, dimensions, tiledRenderable), groundLayer+1);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,366 @@
+package pepse.world;
+
+import danogl.GameObject;
+import danogl.gui.rendering.Camera;
+import danogl.gui.rendering.Renderable;
+import danogl.util.Vector2;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the solid tiles of the loaded chunks in one primitive grid per chunk, instead of one
+ * game object per block. It is itself a single game object that covers the camera's view and
+ * draws only the tiles inside it, and it resolves collisions against the grid analytically.
+ * The grid spans a fixed band of rows; everything above or below it is air.
+ */
+public class TileMap extends GameObject {
+    /** the tile type of an empty cell. */
+    public static final byte AIR = 0;
+    private static final int MAX_TILE_TYPES = Byte.MAX_VALUE + 1;
+    //keeps an object's edge inside the tile it touches, rather than the next one
+    private static final float EDGE_EPSILON = 0.01f;
+
+    private final float topY;
+    private final int rows;
+    private final Renderable[] tileRenderables = new Renderable[MAX_TILE_TYPES];
+    //tile types that are ground rather than obstacles standing on it, such as trunks
+    private final boolean[] groundTypes = new boolean[MAX_TILE_TYPES];
+    //dimensions of a vertical run of each length, so drawing a run allocates nothing
+    private final Vector2[] runDimensions;
+    private int tileTypeCount = 1;
+    //column-major: the tile at (column, row) of a chunk is at column * rows + row
+    private final Map<Integer, byte[]> chunkTiles = new HashMap<>();
+    private Camera camera;
+
+    /**
+     * Constructor for TileMap.
+     * @param topY y coordinate of the top edge of the first row.
+     * @param rows number of rows in the grid.
+     */
+    public TileMap(float topY, int rows) {
+        super(Vector2.ZERO, Vector2.ZERO, null);
+        this.topY = topY;
+        this.rows = rows;
+        this.runDimensions = new Vector2[rows + 1];
+        for (int length = 1; length <= rows; length++) {
+            runDimensions[length] = new Vector2(Block.SIZE, length * Block.SIZE);
+        }
+        renderer().setRenderable(this::renderTiles);
+    }
+
+    /**
+     * Registers how a kind of tile looks.
+     * @param renderable draws one tile, or a vertical run of equal tiles stretched over it.
+     * @param ground true if tiles of this type are ground, false for obstacles standing on the ground.
+     * @return the tile type, for setTile.
+     */
+    public byte addTileType(Renderable renderable, boolean ground) {
+        if (tileTypeCount == MAX_TILE_TYPES) {
+            throw new IllegalStateException("too many tile types");
+        }
+        tileRenderables[tileTypeCount] = renderable;
+        groundTypes[tileTypeCount] = ground;
+        return (byte) tileTypeCount++;
+    }
+
+    /**
+     * Makes the tile map cover the given camera's view from now on.
+     * @param camera the camera the world is seen through.
+     */
+    public void followCamera(Camera camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * Adds an empty grid for a chunk, replacing any grid it had.
+     * @param index the chunk index.
+     */
+    public void addChunk(int index) {
+        chunkTiles.put(index, new byte[Chunk.COLUMNS * rows]);
+    }
+
+    /**
+     * Drops the grid of a chunk.
+     * @param index the chunk index.
+     */
+    public void removeChunk(int index) {
+        chunkTiles.remove(index);
+    }
+
+    /**
+     * @return number of chunks that have a grid.
+     */
+    public int chunkCount() {
+        return chunkTiles.size();
+    }
+
+    /**
+     * Gets the column containing an x coordinate.
+     * @param x coordinate.
+     * @return the column index.
+     */
+    public static int columnOf(float x) {
+        return (int) Math.floor(x / Block.SIZE);
+    }
+
+    /**
+     * Gets the row containing a y coordinate.
+     * @param y coordinate.
+     * @return the row index, negative above the grid.
+     */
+    public int rowOf(float y) {
+        return (int) Math.floor((y - topY) / Block.SIZE);
+    }
+
+    /**
+     * @param row a row index.
+     * @return y coordinate of the row's top edge.
+     */
+    public float rowTop(int row) {
+        return topY + row * Block.SIZE;
+    }
+
+    /**
+     * Sets a tile. Tiles of chunks without a grid, or outside the rows of the grid, are ignored.
+     * @param column the column index.
+     * @param row the row index.
+     * @param type the tile type, or AIR.
+     */
+    public void setTile(int column, int row, byte type) {
+        byte[] tiles = chunkTiles.get(Math.floorDiv(column, Chunk.COLUMNS));
+        if (tiles != null && row >= 0 && row < rows) {
+            tiles[Math.floorMod(column, Chunk.COLUMNS) * rows + row] = type;
+        }
+    }
+
+    /**
+     * Gets a tile.
+     * @param column the column index.
+     * @param row the row index.
+     * @return the tile type, AIR outside the loaded grids.
+     */
+    public byte tileAt(int column, int row) {
+        byte[] tiles = chunkTiles.get(Math.floorDiv(column, Chunk.COLUMNS));
+        if (tiles == null || row < 0 || row >= rows) {
+            return AIR;
+        }
+        return tiles[Math.floorMod(column, Chunk.COLUMNS) * rows + row];
+    }
+
+    /**
+     * Gets the top of the highest ground tile in the column containing an x coordinate, ignoring
+     * obstacles such as trunks that stand on it. This is where things resting on the ground land.
+     * @param x coordinate.
+     * @return y coordinate of the ground, or NaN if the column has no ground tile.
+     */
+    public float groundAt(float x) {
+        return topAt(x, true);
+    }
+
+    /**
+     * Gets the top of the highest solid tile of any type in the column containing an x coordinate,
+     * which is the top of a trunk where one stands on the ground.
+     * @param x coordinate.
+     * @return y coordinate of the topmost solid tile, or NaN if the column has no solid tile.
+     */
+    public float solidTopAt(float x) {
+        return topAt(x, false);
+    }
+
+    /**
+     * Gets the top of the highest tile in the column containing an x coordinate.
+     * @param x coordinate.
+     * @param groundOnly true to skip tiles whose type is not ground.
+     * @return y coordinate of the tile's top, or NaN if the column has no such tile.
+     */
+    private float topAt(float x, boolean groundOnly) {
+        int column = columnOf(x);
+        byte[] tiles = chunkTiles.get(Math.floorDiv(column, Chunk.COLUMNS));
+        if (tiles != null) {
+            int start = Math.floorMod(column, Chunk.COLUMNS) * rows;
+            for (int row = 0; row < rows; row++) {
+                byte type = tiles[start + row];
+                if (type != AIR && (!groundOnly || groundTypes[type])) {
+                    return rowTop(row);
+                }
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Moves a body that moved from a previous position back out of the tiles it ran into,
+     * first horizontally and then vertically, and stops its velocity along each blocked axis.
+     * Every tile between the two positions is tested, so fast bodies do not tunnel through thin walls.
+     * @param body the moving body, at its new position.
+     * @param fromX x coordinate of the body's top left corner before it moved.
+     * @param fromY y coordinate of the body's top left corner before it moved.
+     * @return true if the body landed on a tile.
+     */
+    public boolean sweep(GameObject body, float fromX, float fromY) {
+        float width = body.getDimensions().x();
+        float height = body.getDimensions().y();
+        float x = body.getTopLeftCorner().x();
+        float y = body.getTopLeftCorner().y();
+        boolean blocked = false;
+        int firstRow = rowOf(fromY);
+        int lastRow = rowOf(fromY + height - EDGE_EPSILON);
+        if (x > fromX) {
+            int wall = firstSolidColumn(columnOf(fromX + width - EDGE_EPSILON) + 1,
+                    columnOf(x + width - EDGE_EPSILON), 1, firstRow, lastRow);
+            if (wall != Integer.MIN_VALUE) {
+                x = wall * Block.SIZE - width;
+                blocked = true;
+            }
+        } else if (x < fromX) {
+            int wall = firstSolidColumn(columnOf(fromX) - 1, columnOf(x), -1, firstRow, lastRow);
+            if (wall != Integer.MIN_VALUE) {
+                x = (wall + 1) * Block.SIZE;
+                blocked = true;
+            }
+        }
+        if (blocked) {
+            body.transform().setVelocityX(0);
+        }
+        boolean landed = false;
+        blocked = false;
+        int firstColumn = columnOf(x);
+        int lastColumn = columnOf(x + width - EDGE_EPSILON);
+        if (y > fromY) {
+            int floor = firstSolidRow(rowOf(fromY + height - EDGE_EPSILON) + 1,
+                    rowOf(y + height - EDGE_EPSILON), 1, firstColumn, lastColumn);
+            if (floor != Integer.MIN_VALUE) {
+                y = rowTop(floor) - height;
+                blocked = true;
+                landed = true;
+            }
+        } else if (y < fromY) {
+            int ceiling = firstSolidRow(rowOf(fromY) - 1, rowOf(y), -1, firstColumn, lastColumn);
+            if (ceiling != Integer.MIN_VALUE) {
+                y = rowTop(ceiling + 1);
+                blocked = true;
+            }
+        }
+        if (blocked) {
+            body.transform().setVelocityY(0);
+        }
+        body.transform().setTopLeftCorner(x, y);
+        return landed;
+    }
+
+    /**
+     * Walks columns from one to another and finds the first holding a solid tile in a range of rows.
+     * @param from the first column to test.
+     * @param to the last column to test, no column is tested if it is behind from.
+     * @param step 1 to walk right, -1 to walk left.
+     * @param firstRow first row of the range.
+     * @param lastRow last row of the range.
+     * @return the column, or Integer.MIN_VALUE if every tested column is clear.
+     */
+    private int firstSolidColumn(int from, int to, int step, int firstRow, int lastRow) {
+        for (int column = from; (to - column) * step >= 0; column += step) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                if (tileAt(column, row) != AIR) {
+                    return column;
+                }
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Walks rows from one to another and finds the first holding a solid tile in a range of columns.
+     * @param from the first row to test.
+     * @param to the last row to test, no row is tested if it is behind from.
+     * @param step 1 to walk down, -1 to walk up.
+     * @param firstColumn first column of the range.
+     * @param lastColumn last column of the range.
+     * @return the row, or Integer.MIN_VALUE if every tested row is clear.
+     */
+    private int firstSolidRow(int from, int to, int step, int firstColumn, int lastColumn) {
+        for (int row = from; (to - row) * step >= 0; row += step) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (tileAt(column, row) != AIR) {
+                    return row;
+                }
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Moves the tile map over the camera's view.
+     * @param deltaTime seconds since the previous frame.
+     */
+    @Override
+    public void update(float deltaTime) {
+        super.update(deltaTime);
+        if (camera != null) {
+            //one tile of margin, in case the camera moves after this update
+            transform().setTopLeftCorner(camera.getTopLeftCorner().x() - Block.SIZE,
+                    camera.getTopLeftCorner().y() - Block.SIZE);
+            transform().setDimensions(camera.getDimensions().x() + 2 * Block.SIZE,
+                    camera.getDimensions().y() + 2 * Block.SIZE);
+        }
+    }
+
+    /**
+     * The tile map is never part of the engine's collision pass, bodies are swept against it instead.
+     * @param other the other GameObject.
+     * @return false.
+     */
+    @Override
+    public boolean shouldCollideWith(GameObject other) {
+        return false;
+    }
+
+    /**
+     * Draws the tiles inside the tile map's rectangle, one call per vertical run of equal tiles.
+     * Each run is drawn at the origin of the graphics, translated to the run, so nothing is allocated.
+     * @param g the graphics to render with.
+     * @param screenTopLeft top left corner of the tile map on the screen.
+     * @param screenDimensions dimensions of the tile map on the screen.
+     * @param degreesCounterClockwise unused, tiles are never rotated.
+     * @param isFlippedHorizontally unused.
+     * @param isFlippedVertically unused.
+     * @param opaqueness opaqueness of the tiles.
+     */
+    private void renderTiles(Graphics2D g, Vector2 screenTopLeft, Vector2 screenDimensions,
+                             double degreesCounterClockwise, boolean isFlippedHorizontally,
+                             boolean isFlippedVertically, double opaqueness) {
+        float minX = getTopLeftCorner().x();
+        float minY = getTopLeftCorner().y();
+        //adding this to a world coordinate gives the screen coordinate
+        float offsetX = screenTopLeft.x() - minX;
+        float offsetY = screenTopLeft.y() - minY;
+        int firstRow = Math.max(0, rowOf(minY));
+        int lastRow = Math.min(rows - 1, rowOf(minY + screenDimensions.y()));
+        int lastColumn = columnOf(minX + screenDimensions.x());
+        for (int column = columnOf(minX); column <= lastColumn; column++) {
+            byte[] tiles = chunkTiles.get(Math.floorDiv(column, Chunk.COLUMNS));
+            if (tiles == null) {
+                continue;
+            }
+            int start = Math.floorMod(column, Chunk.COLUMNS) * rows;
+            int row = firstRow;
+            while (row <= lastRow) {
+                byte type = tiles[start + row];
+                int runEnd = row + 1;
+                while (runEnd <= lastRow && tiles[start + runEnd] == type) {
+                    runEnd++;
+                }
+                if (type != AIR) {
+                    double runX = column * Block.SIZE + offsetX;
+                    double runY = rowTop(row) + offsetY;
+                    g.translate(runX, runY);
+                    tileRenderables[type].render(g, Vector2.ZERO, runDimensions[runEnd - row],
+                            0, false, false, opaqueness);
+                    g.translate(-runX, -runY);
+                }
+                row = runEnd;
+            }
+        }
+    }
+}
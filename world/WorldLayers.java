@@ -0,0 +1,140 @@
+package pepse.world;
+
+import danogl.collisions.Layer;
+import danogl.collisions.LayerManager;
+
+import java.util.Map;
+
+/**
+ * The layers of the world's objects, and which of them may collide with each other.
+ * Every kind of object gets its own layer, so the engine only pairs up objects whose collisions
+ * mean something: the avatar with the ground and trunks, and leaves with the ground.
+ * Ground hidden beneath the surface never collides with anything.
+ * It also counts the collision work of every frame, to confirm the matrix keeps it small.
+ */
+public final class WorldLayers {
+    /** ground blocks the avatar and leaves can touch, and the tile map. */
+    public static final int SURFACE = Layer.STATIC_OBJECTS;
+    /** ground drawn beneath the surface, which nothing can reach. Terrain puts it right above SURFACE. */
+    public static final int DEEP_GROUND = SURFACE + 1;
+    /** tree trunks, drawn behind the leaves. */
+    public static final int TRUNKS = Layer.DEFAULT - 2;
+    /** leaves, drawn behind the avatar. */
+    public static final int LEAVES = Layer.DEFAULT - 1;
+    /** the avatar. */
+    public static final int AVATAR = Layer.DEFAULT;
+
+    private static final int[] WORLD_LAYERS = {SURFACE, DEEP_GROUND, TRUNKS, LEAVES, AVATAR};
+    //layers whose objects never move and stay inside the columns of the chunk that owns them
+    private static final int[] FIXED_LAYERS = {SURFACE, DEEP_GROUND, TRUNKS};
+    //the pairs of layers that collide, every other pair of world layers (and every layer with itself) does not
+    private static final int[][] COLLIDING_PAIRS = {
+            {AVATAR, SURFACE},
+            {AVATAR, TRUNKS},
+            {LEAVES, SURFACE},
+    };
+    //the pairs of COLLIDING_PAIRS left to analytic ground contact when it is used
+    private static final int[][] GROUND_PAIRS = {
+            {AVATAR, SURFACE},
+            {LEAVES, SURFACE},
+    };
+
+    //pairs of objects asked whether they should collide in the current frame
+    private static long narrowChecks;
+
+    private WorldLayers() {
+    }
+
+    /**
+     * Tells the engine which world layers collide. Every pair of world layers is set explicitly,
+     * so the result does not depend on the engine's defaults.
+     * @param layers the layers of the game's objects.
+     * @param groundContact whether the avatar and leaves stand on the ground by its height rather than by
+     *                      colliding with it, which turns their collisions with the surface off.
+     */
+    public static void configure(LayerManager layers, boolean groundContact) {
+        for (int i = 0; i < WORLD_LAYERS.length; i++) {
+            for (int j = i; j < WORLD_LAYERS.length; j++) {
+                layers.shouldLayersCollide(WORLD_LAYERS[i], WORLD_LAYERS[j],
+                        shouldCollide(WORLD_LAYERS[i], WORLD_LAYERS[j], groundContact));
+            }
+        }
+    }
+
+    /**
+     * @param first a layer.
+     * @param second another layer, or the same one.
+     * @param groundContact whether ground contact replaces collisions with the surface.
+     * @return whether objects of the two layers collide.
+     */
+    public static boolean shouldCollide(int first, int second, boolean groundContact) {
+        return contains(COLLIDING_PAIRS, first, second) && !(groundContact && contains(GROUND_PAIRS, first, second));
+    }
+
+    /**
+     * @param layer a layer.
+     * @return whether objects of the layer never move and lie inside the columns of the chunk that owns them,
+     *         unlike leaves, which hang over and fall into the neighbouring chunks.
+     */
+    public static boolean isFixed(int layer) {
+        for (int fixedLayer : FIXED_LAYERS) {
+            if (fixedLayer == layer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the pairs of objects the engine has to consider in a frame: every pair of objects from two
+     * colliding layers. The engine does not report its own broadphase, this is the number it starts from.
+     * @param liveObjects number of objects per layer.
+     * @param groundContact whether ground contact replaces collisions with the surface.
+     * @return number of candidate pairs.
+     */
+    public static long candidatePairs(Map<Integer, Integer> liveObjects, boolean groundContact) {
+        long pairs = 0;
+        for (int[] pair : COLLIDING_PAIRS) {
+            if (groundContact && contains(GROUND_PAIRS, pair[0], pair[1])) {
+                continue;
+            }
+            long first = liveObjects.getOrDefault(pair[0], 0);
+            long second = liveObjects.getOrDefault(pair[1], 0);
+            pairs += pair[0] == pair[1] ? first * (first - 1) / 2 : first * second;
+        }
+        return pairs;
+    }
+
+    /**
+     * Counts an object being asked whether it should collide with another. The engine asks only about
+     * objects whose bounds overlap, so this approximates the number of narrowphase checks.
+     */
+    public static void countCheck() {
+        narrowChecks++;
+    }
+
+    /**
+     * Gets the checks counted since the previous call, and starts counting again.
+     * @return number of checks.
+     */
+    public static long takeChecks() {
+        long checks = narrowChecks;
+        narrowChecks = 0;
+        return checks;
+    }
+
+    /**
+     * @param pairs pairs of layers.
+     * @param first a layer.
+     * @param second another layer.
+     * @return whether the two layers form one of the pairs, in either order.
+     */
+    private static boolean contains(int[][] pairs, int first, int second) {
+        for (int[] pair : pairs) {
+            if ((pair[0] == first && pair[1] == second) || (pair[0] == second && pair[1] == first)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,107 @@
+package pepse.world;
+
+import danogl.GameObject;
+import danogl.gui.rendering.Renderable;
+import danogl.util.Vector2;
+import pepse.util.ObjectPool;
+import pepse.world.trees.Leaf;
+
+/**
+ * Pools of the game objects that are created and removed whenever chunks are loaded and unloaded.
+ */
+public class WorldPools {
+    private static final Vector2 BLOCK_DIMENSIONS = Vector2.ONES.mult(Block.SIZE);
+    private final ObjectPool<Block> blocks;
+    private final ObjectPool<Leaf> leaves;
+    private FrustumCuller culler;
+
+    /**
+     * Constructor for WorldPools.
+     * @param blockCapacity maximal number of free blocks kept.
+     * @param leafCapacity maximal number of free leaves kept.
+     */
+    public WorldPools(int blockCapacity, int leafCapacity) {
+        this.blocks = new ObjectPool<>(blockCapacity);
+        this.leaves = new ObjectPool<>(leafCapacity);
+    }
+
+    /**
+     * Sets the culler of every block and leaf handed out from now on.
+     * @param culler the culler of the game the objects are used in, or null for none.
+     */
+    public void setCuller(FrustumCuller culler) {
+        this.culler = culler;
+    }
+
+    /**
+     * @return the pool of blocks (ground and trunks).
+     */
+    public ObjectPool<Block> blocks() {
+        return blocks;
+    }
+
+    /**
+     * @return the pool of leaves.
+     */
+    public ObjectPool<Leaf> leaves() {
+        return leaves;
+    }
+
+    /**
+     * Gets a block of Block.SIZE, reusing a free one when possible.
+     * @param topLeftCorner the position in the window the top left corner of the block will be placed.
+     * @param renderable the image object to display on the screen.
+     * @return the block.
+     */
+    public Block block(Vector2 topLeftCorner, Renderable renderable) {
+        return block(topLeftCorner, BLOCK_DIMENSIONS, renderable);
+    }
+
+    /**
+     * Gets a block, reusing a free one when possible.
+     * @param topLeftCorner the position in the window the top left corner of the block will be placed.
+     * @param dimensions the 2d dimensions of the block.
+     * @param renderable the image object to display on the screen.
+     * @return the block.
+     */
+    public Block block(Vector2 topLeftCorner, Vector2 dimensions, Renderable renderable) {
+        Block block = blocks.obtain();
+        if (block == null) {
+            block = new Block(topLeftCorner, dimensions, renderable);
+        } else {
+            block.reset(topLeftCorner, dimensions, renderable);
+        }
+        block.cullWith(culler);
+        return block;
+    }
+
+    /**
+     * Gets a leaf, reusing a free one when possible.
+     * @param topLeftCorner the position in the window the top left corner of the leaf will be placed.
+     * @param dimensions the 2d dimensions of the leaf.
+     * @param renderable the image object to display on the screen.
+     * @return the leaf.
+     */
+    public Leaf leaf(Vector2 topLeftCorner, Vector2 dimensions, Renderable renderable) {
+        Leaf leaf = leaves.obtain();
+        if (leaf == null) {
+            leaf = new Leaf(topLeftCorner, dimensions, renderable);
+        } else {
+            leaf.reset(topLeftCorner, dimensions, renderable);
+        }
+        leaf.cullWith(culler);
+        return leaf;
+    }
+
+    /**
+     * Returns a game object that was removed from the game to its pool, if it has one.
+     * @param gameObject the removed object.
+     */
+    public void recycle(GameObject gameObject) {
+        if (gameObject instanceof Block) {
+            blocks.release((Block) gameObject);
+        } else if (gameObject instanceof Leaf) {
+            leaves.release((Leaf) gameObject);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package pepse.world.daynight;
 import danogl.GameObject;
 import danogl.collisions.GameObjectCollection;
 import danogl.components.CoordinateSpace;
-import danogl.components.Transition;
 import danogl.gui.rendering.OvalRenderable;
 import danogl.util.Vector2;
 
@@ -21,17 +20,25 @@ public class Sun {
     private static final float SUN_DIMENSIONS = 50;
 
     /**
-     * Calculates the center position of the sun.
+     * Calculates the x coordinate of the sun's center.
      * @param windowDimensions the 2d dimensions of the screen.
      * @param angleInSky the rotation angle of the sun.
-     * @return a two-dimensional vector that represents the position of the sun.
+     * @return x coordinate of the sun's center.
      */
-    private static Vector2 calcSunPosition(Vector2 windowDimensions, float angleInSky) {
-        float xValue = (float) (Math.cos(Math.toRadians(angleInSky)) *
+    private static float calcSunX(Vector2 windowDimensions, float angleInSky) {
+        return (float) (Math.cos(Math.toRadians(angleInSky)) *
                 windowDimensions.x() / SUN_X_DIVISOR + windowDimensions.x() / SUN_X_DIVISOR);
-        float yValue = (float) (Math.sin(Math.toRadians(Math.PI - angleInSky)) *
+    }
+
+    /**
+     * Calculates the y coordinate of the sun's center.
+     * @param windowDimensions the 2d dimensions of the screen.
+     * @param angleInSky the rotation angle of the sun.
+     * @return y coordinate of the sun's center.
+     */
+    private static float calcSunY(Vector2 windowDimensions, float angleInSky) {
+        return (float) (Math.sin(Math.toRadians(Math.PI - angleInSky)) *
                 windowDimensions.y() / Y_DIV + windowDimensions.y() / Y_DIVISOR);
-        return new Vector2(xValue, yValue);
     }
 
     /**
@@ -51,24 +58,28 @@ public class Sun {
         // initial size and coordinates
         gameObjects.addGameObject(sun, layer);
         sun.setCoordinateSpace(CoordinateSpace.CAMERA_COORDINATES);
-        addTransition(windowDimensions, cycleLength, sun);
+        addMovement(windowDimensions, cycleLength, sun);
         return sun;
     }
 
     /**
-     * Adds a new transition to the sun.
+     * Moves the sun back and forth across the sky, like a linear back and forth transition of its angle,
+     * without boxing the angle or allocating its position on every frame.
      * @param windowDimensions the 2d dimensions of the screen.
      * @param cycleLength the number of seconds a "day" takes.
      * @param sun sun game object.
      */
-    private static void addTransition(Vector2 windowDimensions, float cycleLength, GameObject sun) {
-        new Transition<>(sun, // the game object being changed
-                (angle) -> sun.setCenter(calcSunPosition(windowDimensions, angle)), // the method to call
-                -START_ANGLE, // initial transition value
-                START_ANGLE, // final transition value
-                Transition.LINEAR_INTERPOLATOR_FLOAT,
-                cycleLength, // transition fully over half a day
-                Transition.TransitionType.TRANSITION_BACK_AND_FORTH,
-                null); // nothing further to execute upon reaching final value
+    private static void addMovement(Vector2 windowDimensions, float cycleLength, GameObject sun) {
+        float[] time = {0};
+        sun.addComponent(deltaTime -> {
+            //time within one back and forth cycle
+            time[0] = (time[0] + deltaTime) % (2 * cycleLength);
+            float progress = time[0] / cycleLength;
+            if (progress > 1) {
+                progress = 2 - progress;
+            }
+            float angle = -START_ANGLE + 2 * START_ANGLE * progress;
+            sun.transform().setCenter(calcSunX(windowDimensions, angle), calcSunY(windowDimensions, angle));
+        });
     }
 }
@@ -2,40 +2,25 @@ package pepse.world.trees;
 
 import danogl.GameObject;
 import danogl.collisions.Collision;
-import danogl.components.ScheduledTask;
-import danogl.components.Transition;
 import danogl.gui.rendering.Renderable;
 import danogl.util.Vector2;
+import pepse.world.Cullable;
+import pepse.world.FrustumCuller;
+import pepse.world.WorldLayers;
 
-import java.util.Random;
+import java.awt.*;
 
 /**
  * Represents a leaf object.
+ * Its life (swaying, falling, fading and growing back) is animated by a LeafSystem.
+ * It is only rendered while the camera sees it, and only updated while it is awake.
  */
-public class Leaf extends GameObject {
-    private static final int MOVE_LOWER_BOUND = 3;
-    private static final int MOVE_UPPER_BOUND = 5;
-    private static final int FALL_LOWER_BOUND = 10;
-    private static final int FALL_UPPER_BOUND = 30;
-    private static final int FADE_LOWER_BOUND = 2;
-    private static final int FADE_UPPER_BOUND = 8;
-    private static final float FADE_OUT_TIME = 15;
-    private static final float FALL_VELOCITY = 25;
-    private static final Float HORIZONTAL_INITIAL_VALUE = 40f;
-    private static final Float HORIZONTAL_FINAL_VALUE = -40f;
-    private static final Float MOVE_INITIAL_VALUE = -8f;
-    private static final Float MOVE_FINAL_VALUE = 8f;
-    private static final float MOVE_TRANSITION_TIME = 3f;
-    private static final float MOVE_TRANSITION_MULTIPLIER_X = 1.2f;
-    private static final float MOVE_TRANSITION_MULTIPLIER_Y = 0.8f;
-    private static final float MOVE_DIMENSION_TIME = 4;
-    private static final float FALL_TRANSITION_TIME = 2;
-
-
-    private final Vector2 topLeftCorner;
-    private final Vector2 dimensions;
-    private final Random random;
-    private Transition<Float> horizontalTransition;
+public class Leaf extends GameObject implements Cullable {
+    private LeafSystem system;
+    private int slot = -1;
+    private boolean asleep;
+    private long visibleFrame;
+    private FrustumCuller culler;
 
     /**
      * Construct a new GameObject instance.
@@ -49,73 +34,95 @@ public class Leaf extends GameObject {
 
     public Leaf(Vector2 topLeftCorner, Vector2 dimensions, Renderable renderable) {
         super(topLeftCorner, dimensions, renderable);
-        this.dimensions = dimensions;
-        this.topLeftCorner = topLeftCorner;
         physics().preventIntersectionsFromDirection(Vector2.ZERO);
-        random = new Random();
-        scheduleLeafLife();
-
     }
 
     /**
-     * Starts a new life for the leaves that were fallen.
+     * Prepares a pooled leaf to be used again, as if it was just constructed.
+     * Detaches it from its leaf system, which drops any animation still pending for it.
+     * @param topLeftCorner Position of the object, in window coordinates (pixels).
+     * @param dimensions    Width and height in window coordinates.
+     * @param renderable    The renderable representing the object.
      */
-    private void leafNewLife() {
+    public void reset(Vector2 topLeftCorner, Vector2 dimensions, Renderable renderable) {
+        if (system != null) {
+            system.remove(this);
+        }
         setDimensions(dimensions);
         setTopLeftCorner(topLeftCorner);
+        renderer().setRenderable(renderable);
         renderer().setRenderableAngle(0);
-        renderer().fadeIn(0);
-        scheduleLeafLife();
+        renderer().setOpaqueness(1);
+        transform().setVelocity(Vector2.ZERO);
     }
 
     /**
-     * Sets the lifetime of the leaves and their movement time.
+     * Sets the system that animates this leaf, and the leaf's slot in it.
+     * @param system the leaf system, or null when the leaf is no longer animated.
+     * @param slot the leaf's slot in the system.
      */
-    private void scheduleLeafLife() {
-        int randMove = random.nextInt(MOVE_UPPER_BOUND - MOVE_LOWER_BOUND);
-        // allow generating numbers within a range and doesn't accept 2 params, only 1 param (upper bound)
-        // so this is our way of mimicking two param behaviour.
-        randMove += MOVE_LOWER_BOUND;
-        new ScheduledTask(this, randMove, false, this::leafMove);
+    void attach(LeafSystem system, int slot) {
+        this.system = system;
+        this.slot = slot;
+    }
 
-        int randFall = random.nextInt(FALL_UPPER_BOUND - FALL_LOWER_BOUND) + FALL_LOWER_BOUND;
-        new ScheduledTask(this, randFall, false, this::leafFall);
+    /**
+     * @return the leaf's slot in its leaf system.
+     */
+    int slot() {
+        return slot;
     }
 
     /**
-     * Sets the transition for the leaf's fall.
+     * Sets whether the leaf sleeps, a sleeping leaf collides with nothing.
+     * @param asleep true to put the leaf to sleep.
      */
-    private void leafFall() {
-        this.renderer().fadeOut(FADE_OUT_TIME, this::leafFadeOut);
-        this.transform().setVelocityY(FALL_VELOCITY);
-        this.horizontalTransition = new Transition<>(this, transform()::setVelocityX,
-                HORIZONTAL_INITIAL_VALUE, HORIZONTAL_FINAL_VALUE, Transition.CUBIC_INTERPOLATOR_FLOAT,
-                FALL_TRANSITION_TIME,
-                Transition.TransitionType.TRANSITION_BACK_AND_FORTH, null);
+    void setAsleep(boolean asleep) {
+        this.asleep = asleep;
+    }
+
+    @Override
+    public void cullWith(FrustumCuller culler) {
+        this.culler = culler;
+    }
+
+    @Override
+    public void markVisible(long frame) {
+        visibleFrame = frame;
     }
 
     /**
-     * Sets the transitions for the leaf's movement.
+     * Updates the leaf, unless it sleeps and therefore does not move.
+     * @param deltaTime seconds since the previous frame.
      */
-    private void leafMove() {
-        new Transition<>(this, this.renderer()::setRenderableAngle, MOVE_INITIAL_VALUE, MOVE_FINAL_VALUE,
-                Transition.LINEAR_INTERPOLATOR_FLOAT, MOVE_TRANSITION_TIME,
-                Transition.TransitionType.TRANSITION_BACK_AND_FORTH, null);
-        new Transition<>(this, this::setDimensions, dimensions,
-                new Vector2(dimensions.x() * MOVE_TRANSITION_MULTIPLIER_X,
-                        dimensions.y() * MOVE_TRANSITION_MULTIPLIER_Y),
-                Transition.CUBIC_INTERPOLATOR_VECTOR, MOVE_DIMENSION_TIME,
-                Transition.TransitionType.TRANSITION_BACK_AND_FORTH, null);
+    @Override
+    public void update(float deltaTime) {
+        if (!asleep) {
+            super.update(deltaTime);
+        }
     }
 
     /**
-     * Sets the time it takes for the leaf to fade out (gradually).
+     * Renders the leaf, only while the camera sees it.
+     * @param g the graphics to render with.
      */
-    private void leafFadeOut() {
-        int fadeOutRand = random.nextInt(FADE_UPPER_BOUND - FADE_LOWER_BOUND) + FADE_LOWER_BOUND;
-        new ScheduledTask(this, fadeOutRand, false, this::leafNewLife);
+    @Override
+    public void render(Graphics2D g) {
+        if (culler == null || culler.isVisible(visibleFrame)) {
+            super.render(g);
+        }
     }
 
+    /**
+     * Sleeping leaves are left out of the collision pass.
+     * @param other the other GameObject.
+     * @return false if the leaf sleeps.
+     */
+    @Override
+    public boolean shouldCollideWith(GameObject other) {
+        WorldLayers.countCheck();
+        return !asleep && super.shouldCollideWith(other);
+    }
 
     /**
      * Called on every frame of a collision with a given object, including the first.
@@ -126,7 +133,8 @@ public class Leaf extends GameObject {
     @Override
     public void onCollisionStay(GameObject other, Collision collision) {
         super.onCollisionEnter(other, collision);
-        transform().setVelocityX(0);
-        removeComponent(horizontalTransition);
+        if (system != null) {
+            system.land(slot);
+        }
     }
-}
\ No newline at end of file
+}
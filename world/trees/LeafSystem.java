@@ -0,0 +1,728 @@
+package pepse.world.trees;
+
+import danogl.util.Vector2;
+import pepse.util.ParallelUpdate;
+import pepse.util.PositionHash;
+import pepse.world.SpatialIndex;
+import pepse.world.GroundContact;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Animates every leaf in the world in one loop per frame.
+ * The state of each leaf is kept in primitive arrays (one slot per leaf), and every animated value
+ * is derived from the time spent in the current phase, instead of each leaf owning its own
+ * scheduled tasks and transitions.
+ * A leaf hangs and sways, falls while fading out and drifting sideways, waits, and grows back.
+ * Only leaves inside the active range (the camera's view plus a margin) are animated. The others sleep:
+ * they are not updated, do not move or collide, and when they wake up their life is fast-forwarded
+ * analytically by the time they slept. Awake leaves occupy the first slots, so a frame only loops
+ * over them.
+ * A frame has two stages: advancing the state arrays, which touches no game object and may run in
+ * parallel, and then applying the results to the leaves' game objects on the calling thread.
+ */
+public class LeafSystem {
+    private static final int MOVE_LOWER_BOUND = 3;
+    private static final int MOVE_UPPER_BOUND = 5;
+    private static final int FALL_LOWER_BOUND = 10;
+    private static final int FALL_UPPER_BOUND = 30;
+    private static final int FADE_LOWER_BOUND = 2;
+    private static final int FADE_UPPER_BOUND = 8;
+    private static final float FADE_OUT_TIME = 15;
+    private static final float FALL_VELOCITY = 25;
+    private static final float HORIZONTAL_INITIAL_VALUE = 40f;
+    private static final float HORIZONTAL_FINAL_VALUE = -40f;
+    private static final float MOVE_INITIAL_VALUE = -8f;
+    private static final float MOVE_FINAL_VALUE = 8f;
+    private static final float MOVE_TRANSITION_TIME = 3f;
+    private static final float MOVE_TRANSITION_MULTIPLIER_X = 1.2f;
+    private static final float MOVE_TRANSITION_MULTIPLIER_Y = 0.8f;
+    private static final float MOVE_DIMENSION_TIME = 4;
+    private static final float FALL_TRANSITION_TIME = 2;
+    //salts for the independent timings hashed for each life of a leaf
+    private static final long MOVE_SALT = 1;
+    private static final long FALL_SALT = 2;
+    private static final long FADE_SALT = 3;
+    private static final int INITIAL_CAPACITY = 1024;
+    //bytes of saved state per leaf: life, phase, landed, life time, phase time, x, y
+    private static final int STATE_BYTES = Integer.BYTES + 2 + 4 * Float.BYTES;
+    //seconds between checks of which leaves are in the active range
+    private static final float RECHECK_INTERVAL = 0.2f;
+
+    //phases of a leaf's life
+    private static final byte HANGING = 0;
+    private static final byte FALLING = 1;
+    private static final byte FADED = 2;
+
+    //what happened to a leaf while its state advanced, for the apply stage to act on
+    private static final byte NO_EVENT = 0;
+    private static final byte FELL = 1;
+    private static final byte FADED_OUT = 2;
+    private static final byte REGREW = 3;
+
+    private SpatialIndex spatialIndex;
+    private Function<Float, Float> groundHeight;
+    private GroundContact groundContact;
+    private float activeMinX = Float.NEGATIVE_INFINITY;
+    private float activeMaxX = Float.POSITIVE_INFINITY;
+    //seconds animated since the system was created, and since the last activity check
+    private double clock;
+    private float sinceRecheck;
+    private int size;
+    //slots below awakeCount hold awake leaves, the rest sleep
+    private int awakeCount;
+    private Leaf[] leaves = new Leaf[INITIAL_CAPACITY];
+    private long[] seeds = new long[INITIAL_CAPACITY];
+    private int[] lives = new int[INITIAL_CAPACITY];
+    private byte[] phases = new byte[INITIAL_CAPACITY];
+    //time since the current life began, and since the current phase began
+    private float[] lifeTimes = new float[INITIAL_CAPACITY];
+    private float[] phaseTimes = new float[INITIAL_CAPACITY];
+    //delays of the current life: sway start, fall start and regrow (after fading)
+    private float[] moveDelays = new float[INITIAL_CAPACITY];
+    private float[] fallDelays = new float[INITIAL_CAPACITY];
+    private float[] fadeDelays = new float[INITIAL_CAPACITY];
+    private boolean[] landed = new boolean[INITIAL_CAPACITY];
+    //where the leaf grows, and its size when it does
+    private float[] homeX = new float[INITIAL_CAPACITY];
+    private float[] homeY = new float[INITIAL_CAPACITY];
+    private float[] widths = new float[INITIAL_CAPACITY];
+    private float[] heights = new float[INITIAL_CAPACITY];
+    //clock time a sleeping leaf fell asleep at
+    private double[] sleptAt = new double[INITIAL_CAPACITY];
+    //results of the advance stage of the current frame, read by the apply stage
+    private byte[] events = new byte[INITIAL_CAPACITY];
+    private float[] swayAngles = new float[INITIAL_CAPACITY];
+    private float[] swayWidths = new float[INITIAL_CAPACITY];
+    private float[] swayHeights = new float[INITIAL_CAPACITY];
+    private float[] driftVelocities = new float[INITIAL_CAPACITY];
+
+    private ParallelUpdate parallelUpdate = new ParallelUpdate(null, 0);
+    private final ParallelUpdate.RangeBody advanceRange = this::advance;
+    //seconds the current frame advances the leaves by
+    private float stepTime;
+
+    /**
+     * Sets how the state of the awake leaves is advanced every frame.
+     * @param parallelUpdate splits the leaves across threads when there are enough of them.
+     */
+    public void setParallelUpdate(ParallelUpdate parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+    }
+
+    /**
+     * Sets the index that is told when leaves move.
+     * @param spatialIndex the index of the world's objects.
+     */
+    public void setSpatialIndex(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * Makes awake leaves land by asking for the ground height under them, instead of colliding with blocks.
+     * @param groundContact the ground contact, or null to land on collisions only.
+     */
+    public void setGroundContact(GroundContact groundContact) {
+        this.groundContact = groundContact;
+    }
+
+    /**
+     * Sets the ground leaves land on while they sleep, when they fall without the engine moving them.
+     * @param groundHeight gets the ground height (y coordinate) at an x coordinate.
+     */
+    public void setGroundHeight(Function<Float, Float> groundHeight) {
+        this.groundHeight = groundHeight;
+    }
+
+    /**
+     * Sets the x range in which leaves are animated, usually the camera's view plus a margin.
+     * Leaves whose home is outside it fall asleep at the next activity check.
+     * @param minX first x value in range.
+     * @param maxX last x value in range.
+     */
+    public void setActiveRange(float minX, float maxX) {
+        activeMinX = minX;
+        activeMaxX = maxX;
+    }
+
+    /**
+     * Starts animating a leaf, from the beginning of its first life.
+     * @param leaf the leaf, already placed where it grows.
+     * @param seed seed of the leaf, its timings are derived from it and from its current life.
+     */
+    public void add(Leaf leaf, long seed) {
+        //keep one spare slot, swapping slots goes through it
+        if (size + 1 >= leaves.length) {
+            grow();
+        }
+        int slot = size++;
+        leaves[slot] = leaf;
+        seeds[slot] = seed;
+        lives[slot] = 0;
+        homeX[slot] = leaf.getTopLeftCorner().x();
+        homeY[slot] = leaf.getTopLeftCorner().y();
+        widths[slot] = leaf.getDimensions().x();
+        heights[slot] = leaf.getDimensions().y();
+        leaf.attach(this, slot);
+        startLife(slot);
+        sleptAt[slot] = clock;
+        leaf.setAsleep(true);
+        if (isActive(slot)) {
+            wake(slot);
+        }
+    }
+
+    /**
+     * Stops animating a leaf. The last leaf takes over its slot.
+     * @param leaf the leaf to remove.
+     */
+    public void remove(Leaf leaf) {
+        int slot = leaf.slot();
+        if (slot < 0 || slot >= size || leaves[slot] != leaf) {
+            return;
+        }
+        if (slot < awakeCount) {
+            //the last awake leaf fills the hole, and the last sleeping leaf fills its slot
+            int lastAwake = --awakeCount;
+            if (slot != lastAwake) {
+                moveSlot(lastAwake, slot);
+            }
+            slot = lastAwake;
+        }
+        int last = --size;
+        if (slot != last) {
+            moveSlot(last, slot);
+        }
+        leaves[last] = null;
+        leaf.setAsleep(false);
+        leaf.attach(null, -1);
+    }
+
+    /**
+     * @return number of animated leaves, awake or asleep.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of awake leaves.
+     */
+    public int awakeCount() {
+        return awakeCount;
+    }
+
+    /**
+     * Hashes where every animated leaf is in its life and where it is, so two runs can be checked
+     * to have ended the same. Sleeping leaves are hashed as they were when they fell asleep.
+     * @return the hash.
+     */
+    public long stateHash() {
+        long hash = Double.doubleToLongBits(clock);
+        hash = hash * 31 + size;
+        hash = hash * 31 + awakeCount;
+        for (int slot = 0; slot < size; slot++) {
+            hash = hash * 31 + seeds[slot];
+            hash = hash * 31 + lives[slot];
+            hash = hash * 31 + phases[slot];
+            hash = hash * 31 + (landed[slot] ? 1 : 0);
+            hash = hash * 31 + Float.floatToIntBits(lifeTimes[slot]);
+            hash = hash * 31 + Float.floatToIntBits(phaseTimes[slot]);
+            hash = hash * 31 + Float.floatToIntBits(leaves[slot].getTopLeftCorner().x());
+            hash = hash * 31 + Float.floatToIntBits(leaves[slot].getTopLeftCorner().y());
+        }
+        return hash;
+    }
+
+    /**
+     * Advances every leaf by one frame.
+     * @param deltaTime seconds since the previous frame.
+     */
+    public void update(float deltaTime) {
+        clock += deltaTime;
+        sinceRecheck += deltaTime;
+        if (sinceRecheck >= RECHECK_INTERVAL) {
+            sinceRecheck = 0;
+            recheckActivity();
+        }
+        stepTime = deltaTime;
+        parallelUpdate.run(awakeCount, advanceRange);
+        for (int slot = 0; slot < awakeCount; slot++) {
+            switch (events[slot]) {
+                case FELL:
+                    leaves[slot].transform().setVelocityY(FALL_VELOCITY);
+                    break;
+                case FADED_OUT:
+                    leaves[slot].renderer().setOpaqueness(0);
+                    break;
+                case REGREW:
+                    regrow(slot);
+                    break;
+                default:
+                    break;
+            }
+            apply(slot);
+        }
+    }
+
+    /**
+     * Advances the state of a range of awake leaves by the current frame's step, and computes their
+     * animated values. Touches nothing outside the range's slots, so ranges may advance in parallel.
+     * @param from first slot of the range.
+     * @param to first slot after the range.
+     */
+    private void advance(int from, int to) {
+        float deltaTime = stepTime;
+        for (int slot = from; slot < to; slot++) {
+            lifeTimes[slot] += deltaTime;
+            phaseTimes[slot] += deltaTime;
+            events[slot] = NO_EVENT;
+            switch (phases[slot]) {
+                case HANGING:
+                    if (phaseTimes[slot] >= fallDelays[slot]) {
+                        phases[slot] = FALLING;
+                        phaseTimes[slot] = 0;
+                        events[slot] = FELL;
+                    }
+                    break;
+                case FALLING:
+                    if (phaseTimes[slot] >= FADE_OUT_TIME) {
+                        phases[slot] = FADED;
+                        phaseTimes[slot] = 0;
+                        events[slot] = FADED_OUT;
+                    }
+                    break;
+                default:
+                    if (phaseTimes[slot] >= fadeDelays[slot]) {
+                        lives[slot]++;
+                        startLife(slot);
+                        events[slot] = REGREW;
+                    }
+                    break;
+            }
+            animate(slot);
+        }
+    }
+
+    /**
+     * Saves where a group of leaves is in its life, so it can carry on later.
+     * @param leaves the leaves, all animated by this system.
+     * @return the saved state, for restoreState.
+     */
+    public byte[] saveState(Leaf[] leaves) {
+        ByteBuffer state = ByteBuffer.allocate(leaves.length * STATE_BYTES);
+        for (Leaf leaf : leaves) {
+            int slot = leaf.slot();
+            if (slot >= awakeCount && slot < size && this.leaves[slot] == leaf) {
+                catchUp(slot);
+            }
+            if (slot < 0 || slot >= size || this.leaves[slot] != leaf) {
+                //not animated: restore it as a fresh leaf
+                state.putInt(0).put(HANGING).put((byte) 0).putFloat(0).putFloat(0)
+                        .putFloat(leaf.getTopLeftCorner().x()).putFloat(leaf.getTopLeftCorner().y());
+                continue;
+            }
+            state.putInt(lives[slot]).put(phases[slot]).put((byte) (landed[slot] ? 1 : 0))
+                    .putFloat(lifeTimes[slot]).putFloat(phaseTimes[slot])
+                    .putFloat(leaf.getTopLeftCorner().x()).putFloat(leaf.getTopLeftCorner().y());
+        }
+        return state.array();
+    }
+
+    /**
+     * Makes a group of just added leaves carry on from a saved state.
+     * @param leaves the leaves, in the order they were saved in.
+     * @param savedState the state saveState returned.
+     */
+    public void restoreState(Leaf[] leaves, byte[] savedState) {
+        ByteBuffer state = ByteBuffer.wrap(savedState);
+        for (Leaf leaf : leaves) {
+            int slot = leaf.slot();
+            lives[slot] = state.getInt();
+            startLife(slot);
+            phases[slot] = state.get();
+            landed[slot] = state.get() != 0;
+            lifeTimes[slot] = state.getFloat();
+            phaseTimes[slot] = state.getFloat();
+            leaf.transform().setTopLeftCorner(state.getFloat(), state.getFloat());
+            if (phases[slot] == FALLING && !landed[slot] && slot < awakeCount) {
+                leaf.transform().setVelocityY(FALL_VELOCITY);
+            } else if (phases[slot] == FADED) {
+                leaf.renderer().setOpaqueness(0);
+            }
+            if (spatialIndex != null) {
+                spatialIndex.moved(leaf);
+            }
+        }
+    }
+
+    /**
+     * Tells the spatial index where the falling leaves are now.
+     * Call after the engine moved the game objects.
+     */
+    public void reindexFalling() {
+        if (spatialIndex == null) {
+            return;
+        }
+        for (int slot = 0; slot < awakeCount; slot++) {
+            if (phases[slot] == FALLING) {
+                spatialIndex.moved(leaves[slot]);
+            }
+        }
+    }
+
+    /**
+     * Called when a leaf touches the ground, it stops drifting sideways.
+     * @param slot the leaf's slot.
+     */
+    void land(int slot) {
+        if (phases[slot] == FALLING && !landed[slot]) {
+            landed[slot] = true;
+            leaves[slot].transform().setVelocityX(0);
+        }
+    }
+
+    /**
+     * Computes the animated values of a leaf from its state, without touching its game object.
+     * @param slot the leaf's slot.
+     */
+    private void animate(int slot) {
+        float swayTime = lifeTimes[slot] - moveDelays[slot];
+        if (swayTime >= 0) {
+            float angleProgress = backAndForth(swayTime, MOVE_TRANSITION_TIME);
+            swayAngles[slot] = MOVE_INITIAL_VALUE + (MOVE_FINAL_VALUE - MOVE_INITIAL_VALUE) * angleProgress;
+            float sizeProgress = cubic(backAndForth(swayTime, MOVE_DIMENSION_TIME));
+            swayWidths[slot] = widths[slot] * (1 + (MOVE_TRANSITION_MULTIPLIER_X - 1) * sizeProgress);
+            swayHeights[slot] = heights[slot] * (1 + (MOVE_TRANSITION_MULTIPLIER_Y - 1) * sizeProgress);
+        } else {
+            //not swaying yet, the leaf keeps its size
+            swayWidths[slot] = 0;
+        }
+        if (phases[slot] == FALLING) {
+            float driftProgress = cubic(backAndForth(phaseTimes[slot], FALL_TRANSITION_TIME));
+            driftVelocities[slot] = HORIZONTAL_INITIAL_VALUE +
+                    (HORIZONTAL_FINAL_VALUE - HORIZONTAL_INITIAL_VALUE) * driftProgress;
+        }
+    }
+
+    /**
+     * Writes the animated values of a leaf, as computed by animate, to its game object.
+     * @param slot the leaf's slot.
+     */
+    private void apply(int slot) {
+        Leaf leaf = leaves[slot];
+        if (swayWidths[slot] > 0) {
+            leaf.renderer().setRenderableAngle(swayAngles[slot]);
+            leaf.transform().setDimensions(swayWidths[slot], swayHeights[slot]);
+        }
+        if (phases[slot] == FALLING) {
+            leaf.renderer().setOpaqueness(1 - phaseTimes[slot] / FADE_OUT_TIME);
+            if (!landed[slot] && groundContact != null) {
+                landOnGround(slot);
+            }
+            if (!landed[slot]) {
+                leaf.transform().setVelocityX(driftVelocities[slot]);
+            }
+        }
+    }
+
+    /**
+     * Lands a falling leaf that reached the ground under its center.
+     * @param slot the leaf's slot.
+     */
+    private void landOnGround(int slot) {
+        Leaf leaf = leaves[slot];
+        float x = leaf.getTopLeftCorner().x();
+        float restY = groundContact.heightAt(x + widths[slot] / 2) - heights[slot];
+        if (leaf.getTopLeftCorner().y() >= restY) {
+            leaf.transform().setTopLeftCorner(x, restY);
+            leaf.transform().setVelocityY(0);
+            land(slot);
+        }
+    }
+
+    /**
+     * Draws the timings of a leaf's current life and makes it hang.
+     * @param slot the leaf's slot.
+     */
+    private void startLife(int slot) {
+        long seed = seeds[slot];
+        int life = lives[slot];
+        moveDelays[slot] = MOVE_LOWER_BOUND +
+                PositionHash.nextInt(seed, life, MOVE_SALT, MOVE_UPPER_BOUND - MOVE_LOWER_BOUND);
+        fallDelays[slot] = FALL_LOWER_BOUND +
+                PositionHash.nextInt(seed, life, FALL_SALT, FALL_UPPER_BOUND - FALL_LOWER_BOUND);
+        fadeDelays[slot] = FADE_LOWER_BOUND +
+                PositionHash.nextInt(seed, life, FADE_SALT, FADE_UPPER_BOUND - FADE_LOWER_BOUND);
+        phases[slot] = HANGING;
+        lifeTimes[slot] = 0;
+        phaseTimes[slot] = 0;
+        landed[slot] = false;
+    }
+
+    /**
+     * Puts a leaf that started a new life back where it grows.
+     * @param slot the leaf's slot.
+     */
+    private void regrow(int slot) {
+        Leaf leaf = leaves[slot];
+        leaf.transform().setVelocity(Vector2.ZERO);
+        leaf.transform().setDimensions(widths[slot], heights[slot]);
+        leaf.transform().setTopLeftCorner(homeX[slot], homeY[slot]);
+        if (spatialIndex != null) {
+            spatialIndex.moved(leaf);
+        }
+        leaf.renderer().setRenderableAngle(0);
+        leaf.renderer().setOpaqueness(1);
+    }
+
+    /**
+     * Moves the state of one slot into another.
+     * @param from the slot to move.
+     * @param to the slot to overwrite.
+     */
+    private void moveSlot(int from, int to) {
+        leaves[to] = leaves[from];
+        seeds[to] = seeds[from];
+        lives[to] = lives[from];
+        phases[to] = phases[from];
+        lifeTimes[to] = lifeTimes[from];
+        phaseTimes[to] = phaseTimes[from];
+        moveDelays[to] = moveDelays[from];
+        fallDelays[to] = fallDelays[from];
+        fadeDelays[to] = fadeDelays[from];
+        landed[to] = landed[from];
+        homeX[to] = homeX[from];
+        homeY[to] = homeY[from];
+        widths[to] = widths[from];
+        heights[to] = heights[from];
+        sleptAt[to] = sleptAt[from];
+        leaves[to].attach(this, to);
+    }
+
+    /**
+     * Swaps the state of two slots, through the spare slot after the last one.
+     * @param first a slot.
+     * @param second another slot.
+     */
+    private void swapSlots(int first, int second) {
+        if (first == second) {
+            return;
+        }
+        moveSlot(first, size);
+        moveSlot(second, first);
+        moveSlot(size, second);
+        leaves[size] = null;
+    }
+
+    /**
+     * @param slot a leaf's slot.
+     * @return true if the leaf's home overlaps the active range.
+     */
+    private boolean isActive(int slot) {
+        return homeX[slot] + widths[slot] >= activeMinX && homeX[slot] <= activeMaxX;
+    }
+
+    /**
+     * Puts leaves that left the active range to sleep, and wakes leaves that entered it.
+     */
+    private void recheckActivity() {
+        //walk the awake slots backwards, a sleeping leaf swaps with the last awake one, already checked
+        for (int slot = awakeCount - 1; slot >= 0; slot--) {
+            if (!isActive(slot)) {
+                sleep(slot);
+            }
+        }
+        for (int slot = awakeCount; slot < size; slot++) {
+            if (isActive(slot)) {
+                wake(slot);
+            }
+        }
+    }
+
+    /**
+     * Puts an awake leaf to sleep: it stops moving and colliding, and leaves the awake slots.
+     * @param slot the leaf's slot.
+     */
+    private void sleep(int slot) {
+        Leaf leaf = leaves[slot];
+        leaf.transform().setVelocity(Vector2.ZERO);
+        leaf.setAsleep(true);
+        sleptAt[slot] = clock;
+        swapSlots(slot, --awakeCount);
+    }
+
+    /**
+     * Wakes a sleeping leaf: fast-forwards it by the time it slept and moves it to the awake slots.
+     * @param slot the leaf's slot.
+     */
+    private void wake(int slot) {
+        catchUp(slot);
+        Leaf leaf = leaves[slot];
+        leaf.setAsleep(false);
+        if (phases[slot] == FALLING && !landed[slot]) {
+            leaf.transform().setVelocityY(FALL_VELOCITY);
+        }
+        animate(slot);
+        apply(slot);
+        swapSlots(slot, awakeCount++);
+    }
+
+    /**
+     * Advances a sleeping leaf's life by the time it slept, and places it where that life puts it.
+     * @param slot the leaf's slot.
+     */
+    private void catchUp(int slot) {
+        float elapsed = (float) (clock - sleptAt[slot]);
+        sleptAt[slot] = clock;
+        boolean lifeChanged = false;
+        while (elapsed > 0) {
+            float remaining;
+            switch (phases[slot]) {
+                case HANGING:
+                    remaining = fallDelays[slot] - phaseTimes[slot];
+                    break;
+                case FALLING:
+                    remaining = FADE_OUT_TIME - phaseTimes[slot];
+                    break;
+                default:
+                    remaining = fadeDelays[slot] - phaseTimes[slot];
+                    break;
+            }
+            if (elapsed < remaining) {
+                lifeTimes[slot] += elapsed;
+                phaseTimes[slot] += elapsed;
+                break;
+            }
+            remaining = Math.max(0, remaining);
+            elapsed -= remaining;
+            lifeTimes[slot] += remaining;
+            if (phases[slot] == FADED) {
+                lives[slot]++;
+                startLife(slot);
+                lifeChanged = true;
+            } else {
+                phases[slot]++;
+                phaseTimes[slot] = 0;
+            }
+        }
+        place(slot, lifeChanged);
+    }
+
+    /**
+     * Moves a leaf to where its current phase puts it, as if the engine had moved it all along.
+     * @param slot the leaf's slot.
+     * @param lifeChanged whether the leaf started a new life since it was last placed.
+     */
+    private void place(int slot, boolean lifeChanged) {
+        Leaf leaf = leaves[slot];
+        if (lifeChanged) {
+            leaf.transform().setDimensions(widths[slot], heights[slot]);
+            leaf.renderer().setRenderableAngle(0);
+        }
+        switch (phases[slot]) {
+            case HANGING:
+                leaf.transform().setTopLeftCorner(homeX[slot], homeY[slot]);
+                leaf.renderer().setOpaqueness(1);
+                break;
+            case FALLING:
+                float fallTime = phaseTimes[slot];
+                if (groundHeight != null) {
+                    float restY = groundHeight.apply(homeX[slot] + widths[slot] / 2) - heights[slot];
+                    float landTime = Math.max(0, (restY - homeY[slot]) / FALL_VELOCITY);
+                    if (fallTime >= landTime) {
+                        fallTime = landTime;
+                        landed[slot] = true;
+                    }
+                }
+                leaf.transform().setTopLeftCorner(homeX[slot] + drift(fallTime),
+                        homeY[slot] + FALL_VELOCITY * fallTime);
+                break;
+            default:
+                leaf.renderer().setOpaqueness(0);
+                break;
+        }
+        if (spatialIndex != null) {
+            spatialIndex.moved(leaf);
+        }
+    }
+
+    /**
+     * Doubles the capacity of every buffer.
+     */
+    private void grow() {
+        int capacity = leaves.length * 2;
+        leaves = Arrays.copyOf(leaves, capacity);
+        seeds = Arrays.copyOf(seeds, capacity);
+        lives = Arrays.copyOf(lives, capacity);
+        phases = Arrays.copyOf(phases, capacity);
+        lifeTimes = Arrays.copyOf(lifeTimes, capacity);
+        phaseTimes = Arrays.copyOf(phaseTimes, capacity);
+        moveDelays = Arrays.copyOf(moveDelays, capacity);
+        fallDelays = Arrays.copyOf(fallDelays, capacity);
+        fadeDelays = Arrays.copyOf(fadeDelays, capacity);
+        landed = Arrays.copyOf(landed, capacity);
+        homeX = Arrays.copyOf(homeX, capacity);
+        homeY = Arrays.copyOf(homeY, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        sleptAt = Arrays.copyOf(sleptAt, capacity);
+        events = Arrays.copyOf(events, capacity);
+        swayAngles = Arrays.copyOf(swayAngles, capacity);
+        swayWidths = Arrays.copyOf(swayWidths, capacity);
+        swayHeights = Arrays.copyOf(swayHeights, capacity);
+        driftVelocities = Arrays.copyOf(driftVelocities, capacity);
+    }
+
+    /**
+     * Horizontal distance a falling leaf drifts, the integral of its sideways velocity.
+     * @param fallTime seconds since the leaf started falling.
+     * @return the distance, positive to the right.
+     */
+    private static float drift(float fallTime) {
+        float period = 2 * FALL_TRANSITION_TIME;
+        float periods = (float) Math.floor(fallTime / period);
+        float rest = fallTime - periods * period;
+        //each leg of the back and forth integrates the cubic ease to half its duration
+        float eased = periods * FALL_TRANSITION_TIME;
+        if (rest <= FALL_TRANSITION_TIME) {
+            eased += FALL_TRANSITION_TIME * cubicIntegral(rest / FALL_TRANSITION_TIME);
+        } else {
+            float back = (rest - FALL_TRANSITION_TIME) / FALL_TRANSITION_TIME;
+            eased += FALL_TRANSITION_TIME * (2 * cubicIntegral(1) - cubicIntegral(1 - back));
+        }
+        return HORIZONTAL_INITIAL_VALUE * fallTime + (HORIZONTAL_FINAL_VALUE - HORIZONTAL_INITIAL_VALUE) * eased;
+    }
+
+    /**
+     * Integral of the cubic ease from 0 to the given progress.
+     * @param progress linear progress in the range [0, 1].
+     * @return the integral, 0.5 for the full range.
+     */
+    private static float cubicIntegral(float progress) {
+        float squared = progress * progress;
+        return squared * progress - squared * squared / 2;
+    }
+
+    /**
+     * Progress of a transition that goes back and forth, like TRANSITION_BACK_AND_FORTH.
+     * @param time time since the transition started.
+     * @param transitionTime time of one way.
+     * @return progress in the range [0, 1].
+     */
+    private static float backAndForth(float time, float transitionTime) {
+        float progress = (time % (2 * transitionTime)) / transitionTime;
+        return progress > 1 ? 2 - progress : progress;
+    }
+
+    /**
+     * Cubic ease in and out, like the cubic transition interpolators.
+     * @param progress linear progress in the range [0, 1].
+     * @return eased progress in the range [0, 1].
+     */
+    private static float cubic(float progress) {
+        return progress * progress * (3 - 2 * progress);
+    }
+}
@@ -1,13 +1,15 @@
 package pepse.world.trees;
 
-import danogl.collisions.GameObjectCollection;
-import danogl.gui.rendering.RectangleRenderable;
 import danogl.util.Vector2;
 import pepse.util.ColorSupplier;
+import pepse.util.PositionHash;
 import pepse.world.Block;
+import pepse.world.Chunk;
+import pepse.world.ChunkData;
+import pepse.world.TileMap;
+import pepse.world.WorldPools;
 
 import java.awt.*;
-import java.util.Random;
 import java.util.function.Function;
 
 /**
@@ -21,81 +23,165 @@ public class Tree {
     private static final int TREE_HEIGHT_LOWER_BOUND = 6;
     private static final int LEAF_SQUARE = 2;
     private static final float LEAF_SIZE = 30;
-    private final Random random;
+    private static final int LEAVES_PER_TREE = (2 * LEAF_SQUARE) * (2 * LEAF_SQUARE + 1);
+    //salts for the independent values hashed from a tree's column
+    private static final long TREE_SALT = 1;
+    private static final long HEIGHT_SALT = 2;
+    private static final long LEAVES_SALT = 3;
+    private static final long LEAF_COLOR_SALT = 4;
+    private final int seed;
     private final Function<Float, Float> heightFunction;
-    private final GameObjectCollection gameObjects;
-    private final int layer;
+    private final int trunkLayer;
+    private final int leafLayer;
+    private final LeafSystem leafSystem;
+    private final WorldPools pools;
+    private TileMap tileMap;
+    private byte trunkTile;
 
     /**
      * Constructor for Terrain.
      * @param heightFunction function that gets the ground height.
-     * @param gameObjects all game objects in the game.
-     * @param layer the layer of the ground blocks.
+     * @param trunkLayer the layer of the trunk blocks.
+     * @param leafLayer the layer of the leaves.
+     * @param seed the world seed, trees at a given column depend only on it.
+     * @param leafSystem animates the leaves of the trees.
+     * @param pools provides the trunk blocks and leaves.
      */
-    public Tree(Function<Float, Float> heightFunction, GameObjectCollection gameObjects, int layer,
-                int seed) {
+    public Tree(Function<Float, Float> heightFunction, int trunkLayer, int leafLayer, int seed,
+                LeafSystem leafSystem, WorldPools pools) {
         this.heightFunction = heightFunction;
-        this.gameObjects = gameObjects;
-        this.layer = layer;
-        this.random = new Random(seed);
+        this.trunkLayer = trunkLayer;
+        this.leafLayer = leafLayer;
+        this.seed = seed;
+        this.leafSystem = leafSystem;
+        this.pools = pools;
     }
 
     /**
-     * Creates trees in given range (the x range of the ground)
-     * @param minX first x value in range.
-     * @param maxX last x value in range.
+     * Makes trunks tiles of a tile map instead of blocks, for chunks created from now on.
+     * @param tileMap the tile map, it must hold a grid for every chunk trees are created in.
      */
-    public void createInRange(int minX, int maxX) {
+    public void setTileMap(TileMap tileMap) {
+        this.tileMap = tileMap;
+        this.trunkTile = tileMap.addTileType(ColorSupplier.solidRenderable(TRUNK_COLOR), false);
+    }
+
+    /**
+     * Decides which columns of a chunk get trees and how they look. Creates no game objects,
+     * so it may run on any thread.
+     * @param data receives the tree specs.
+     */
+    public void prepareChunk(ChunkData data) {
         // for each block in range, plant trees randomly (1/10 chance)
-        for (int xValue = minX; xValue < maxX; xValue += Block.SIZE) {
-            float groundHeight = this.heightFunction.apply((float) xValue) - Block.SIZE;
-            if (this.random.nextInt(TREE_CHANCE) == TREE_CHANCE - 1) {
+        for (int xValue = data.minX(); xValue < data.maxX(); xValue += Block.SIZE) {
+            int column = Math.floorDiv(xValue, Block.SIZE);
+            if (PositionHash.nextInt(seed, column, TREE_SALT, TREE_CHANCE) == TREE_CHANCE - 1) {
+                float groundHeight = this.heightFunction.apply((float) xValue) - Block.SIZE;
                 // now the tree height is also random
-                int trunkHeight = this.random.nextInt(TREE_HEIGHT_UPPER_BOUND - TREE_HEIGHT_LOWER_BOUND);
+                int trunkHeight = PositionHash.nextInt(seed, column, HEIGHT_SALT,
+                        TREE_HEIGHT_UPPER_BOUND - TREE_HEIGHT_LOWER_BOUND);
                 trunkHeight += TREE_HEIGHT_LOWER_BOUND;
-                // add trunk blocks for each tree iteratively
-                addTrunk(trunkHeight, xValue, groundHeight);
-                // add leaves
-                addLeaves(trunkHeight, xValue, groundHeight);
+                long leafSeed = PositionHash.hash(seed, column, LEAVES_SALT);
+                int[] leafColors = new int[LEAVES_PER_TREE];
+                for (int i = 0; i < leafColors.length; i++) {
+                    leafColors[i] = ColorSupplier.variantAt(leafSeed, i, LEAF_COLOR_SALT);
+                }
+                data.addTree(xValue, trunkHeight, groundHeight, leafSeed, leafColors);
+            }
+        }
+    }
+
+    /**
+     * Creates the trees of the given chunk.
+     * @param chunk the chunk to fill, it owns the created trunks and leaves.
+     */
+    public void createInChunk(Chunk chunk) {
+        createColumns(chunk, 0, Chunk.COLUMNS);
+    }
+
+    /**
+     * Creates the trees planted in a range of a chunk's columns, so a chunk can be built over several frames.
+     * @param chunk the chunk to fill, it owns the created trunks and leaves.
+     * @param fromColumn first column of the range.
+     * @param toColumn first column after the range.
+     */
+    public void createColumns(Chunk chunk, int fromColumn, int toColumn) {
+        ChunkData data = chunk.data();
+        int minX = chunk.minX() + fromColumn * Block.SIZE;
+        int maxX = chunk.minX() + toColumn * Block.SIZE;
+        for (int tree = 0; tree < data.treeCount(); tree++) {
+            if (data.treeXValue(tree) < minX || data.treeXValue(tree) >= maxX) {
+                continue;
             }
+            // add trunk blocks for each tree iteratively
+            addTrunk(chunk, data.trunkHeight(tree), data.treeXValue(tree), data.treeGroundHeight(tree));
+            // add leaves
+            addLeaves(chunk, tree, data.trunkHeight(tree), data.treeXValue(tree),
+                    data.treeGroundHeight(tree), data.leafSeed(tree), data.leafColors(tree));
         }
     }
 
     /**
      * Creates trunk for current tree.
+     * @param chunk the chunk that owns the trunk.
      * @param trunkHeight height of current trunk.
      * @param xValue x coordinate of current trunk.
      * @param groundHeight ground height at given x coordinate.
      */
 
-    private void addTrunk(int trunkHeight, int xValue, float groundHeight) {
+    private void addTrunk(Chunk chunk, int trunkHeight, int xValue, float groundHeight) {
+        if (tileMap != null) {
+            //the middle of the lowest trunk cell, so rounding never picks the row above
+            int groundRow = tileMap.rowOf(groundHeight + Block.SIZE / 2f);
+            for (int currentTrunkY = 0; currentTrunkY < trunkHeight; currentTrunkY++) {
+                tileMap.setTile(TileMap.columnOf(xValue), groundRow - currentTrunkY, trunkTile);
+            }
+            return;
+        }
         for (int currentTrunkY = 0; currentTrunkY < trunkHeight; currentTrunkY++) {
             Vector2 location = new Vector2(xValue, groundHeight - currentTrunkY * Block.SIZE);
-            RectangleRenderable renderableTrunk = new RectangleRenderable(TRUNK_COLOR);
-            Block trunk = new Block(location, renderableTrunk);
-            gameObjects.addGameObject(trunk, this.layer);
+            Block trunk = pools.block(location, ColorSupplier.solidRenderable(TRUNK_COLOR));
+            chunk.addGameObject(trunk, this.trunkLayer);
         }
     }
 
     /**
      * Creates leaves for current tree.
+     * @param chunk the chunk that owns the leaves.
+     * @param tree index of current tree in the chunk, the leaves' state is saved under it on unload.
      * @param trunkHeight height of current trunk.
      * @param xValue x coordinate of current trunk.
      * @param groundHeight ground height at given x coordinate.
+     * @param treeSeed seed of current tree, each leaf's timings are derived from it.
+     * @param leafColors palette variant of each leaf's color.
      */
-    private void addLeaves(int trunkHeight, int xValue, float groundHeight) {
+    private void addLeaves(Chunk chunk, int tree, int trunkHeight, int xValue, float groundHeight,
+                           long treeSeed, int[] leafColors) {
+        Leaf[] leaves = new Leaf[leafColors.length];
+        int leafIndex = 0;
         for (int leafHeight = trunkHeight - LEAF_SQUARE;
              leafHeight < trunkHeight + LEAF_SQUARE; leafHeight++) {
             for (int leafWidth = xValue - LEAF_SQUARE * Block.SIZE;
                  leafWidth <= xValue + LEAF_SQUARE * Block.SIZE; leafWidth += Block.SIZE) {
                 Vector2 location = new Vector2(leafWidth, groundHeight - leafHeight * Block.SIZE);
-                RectangleRenderable leafRenderable = new RectangleRenderable(
-                        ColorSupplier.approximateColor(LEAVES_COLOR));
                 Vector2 leafDim = new Vector2(LEAF_SIZE, LEAF_SIZE);
-                Leaf leaf = new Leaf(location, leafDim, leafRenderable);
-                gameObjects.addGameObject(leaf, this.layer);
+                Leaf leaf = pools.leaf(location, leafDim,
+                        ColorSupplier.paletteRenderable(LEAVES_COLOR, leafColors[leafIndex]));
+                chunk.addGameObject(leaf, this.leafLayer);
+                leafSystem.add(leaf, treeSeed + leafIndex);
+                leaves[leafIndex++] = leaf;
             }
         }
+        byte[] leafState = chunk.data().leafState(tree);
+        if (leafState != null) {
+            leafSystem.restoreState(leaves, leafState);
+        }
+        chunk.onUnload(() -> {
+            chunk.data().setLeafState(tree, leafSystem.saveState(leaves));
+            for (Leaf leaf : leaves) {
+                leafSystem.remove(leaf);
+            }
+        });
     }
 
 }